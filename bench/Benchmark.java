@@ -0,0 +1,148 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class Benchmark {
+    private interface Phase {
+        void run(Path input, Path output) throws IOException;
+    }
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private long size = 4 << 20;
+    private int symbols = 10_000;
+    private String mix;
+    private long instructions;
+    private int warmup = 3;
+    private int iterations = 5;
+    private long seed = 1;
+
+    public static void main(String[] args) throws IOException {
+        Benchmark benchmark = new Benchmark();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--size":
+                    benchmark.size = ELFGenerator.parseSize(args[i + 1]);
+                    break;
+                case "--symbols":
+                    benchmark.symbols = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--mix":
+                    benchmark.mix = args[i + 1];
+                    break;
+                case "--warmup":
+                    benchmark.warmup = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--iterations":
+                    benchmark.iterations = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    benchmark.seed = Long.parseLong(args[i + 1]);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    System.out.println("Usage: Benchmark [--size BYTES[k|m|g]] [--symbols N] [--mix KIND=WEIGHT,...]"
+                            + " [--warmup N] [--iterations N] [--seed N]");
+                    return;
+            }
+        }
+        benchmark.run();
+    }
+
+    private void run() throws IOException {
+        Path input = Files.createTempFile("bench", ".elf");
+        Path output = Files.createTempFile("bench", ".txt");
+        try {
+            ELFGenerator generator = new ELFGenerator(size, symbols, seed);
+            if (mix != null) {
+                generator.mix(mix);
+            }
+            generator.write(input);
+            instructions = generator.getInstructionCount();
+            System.out.printf("image: %d instructions, %d symbols, %d bytes%n",
+                    instructions, symbols, Files.size(input));
+            System.out.printf("%-10s %12s %14s %14s %8s %10s%n",
+                    "phase", "ms/op", "instr/s", "bytes/instr", "gc", "gc ms");
+            measure("header", input, output, (in, out) -> {
+                try (ELFParser parser = new ELFParser(in)) {
+                    parser.parseHeader();
+                }
+            });
+            measure("symtab", input, output, (in, out) -> {
+                try (ELFParser parser = new ELFParser(in)) {
+                    parser.parseHeader();
+                    parser.parseSymTable();
+                }
+            });
+            measure("data", input, output, (in, out) -> {
+                try (ELFParser parser = new ELFParser(in)) {
+                    parser.parseHeader();
+                    ByteBuffer text = parser.parseData();
+                    long count = 0;
+                    for (int offset = 0; offset + 1 < text.limit(); offset += (text.get(offset) & 3) == 3 ? 4 : 2) {
+                        count++;
+                    }
+                    if (count != instructions) {
+                        throw new IllegalStateException("Scanned " + count + " of " + instructions + " instructions.");
+                    }
+                }
+            });
+            measure("convert", input, output, (in, out) -> {
+                try (ELFParser parser = new ELFParser(in)) {
+                    ByteBuffer text = parser.parseELF();
+                    new RISCV2Assembler(text, parser).convert(Writer.nullWriter());
+                }
+            });
+            measure("records", input, output, (in, out) -> {
+                try (ELFParser parser = new ELFParser(in)) {
+                    ByteBuffer text = parser.parseELF();
+                    new RISCV2Assembler(text, parser).decodeTable().write(out);
+                }
+            });
+            measure("main", input, output, (in, out) -> Main.main(new String[] {in.toString(), out.toString()}));
+        } finally {
+            Files.deleteIfExists(input);
+            Files.deleteIfExists(output);
+        }
+    }
+
+    private void measure(String name, Path input, Path output, Phase phase) throws IOException {
+        for (int i = 0; i < warmup; i++) {
+            phase.run(input, output);
+        }
+        long gcCount = gcCount();
+        long gcTime = gcTime();
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            phase.run(input, output);
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+        double total = (double) instructions * iterations;
+        System.out.printf("%-10s %12.3f %14.0f %14.2f %8d %10d%n", name,
+                elapsed / 1e6 / iterations, total / (elapsed / 1e9), allocated / total,
+                gcCount() - gcCount, gcTime() - gcTime);
+    }
+
+    private static long gcCount() {
+        long result = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, bean.getCollectionCount());
+        }
+        return result;
+    }
+
+    private static long gcTime() {
+        long result = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(0, bean.getCollectionTime());
+        }
+        return result;
+    }
+}
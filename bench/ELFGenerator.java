@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+public class ELFGenerator {
+    private static final String[] KINDS = {"rvc", "alu", "mem", "branch", "jump", "csr", "mul", "upper"};
+    private static final int[] LOAD_FUNCTIONS = {0b000, 0b001, 0b010, 0b100, 0b101};
+    private static final int[] BRANCH_FUNCTIONS = {0b000, 0b001, 0b100, 0b101, 0b110, 0b111};
+    private static final int[] CSR_FUNCTIONS = {0b001, 0b010, 0b011, 0b101, 0b110, 0b111};
+    private static final int[] CSRS = {0x001, 0x002, 0x003, 0xc00, 0xc01, 0xc02, 0x300, 0x304, 0x305, 0x341, 0x342};
+    private static final int TEXT_ADDRESS = 0x10074;
+    private static final int HEADER_SIZE = 52;
+    private static final byte[] SECTION_NAMES = "\0.text\0.symtab\0.strtab\0.shstrtab\0"
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private final long textSize;
+    private final int symbols;
+    private final long seed;
+    private final int[] weights = {40, 25, 15, 8, 4, 2, 4, 2};
+
+    private Random random;
+    private ByteBuffer buffer;
+    private FileChannel channel;
+    private long instructions;
+
+    public ELFGenerator(long textSize, int symbols, long seed) {
+        if (textSize < 2 || textSize % 2 != 0) {
+            throw new IllegalArgumentException("Text size must be a positive even number of bytes.");
+        }
+        if (textSize > 0xFFFF0000L - HEADER_SIZE - (symbols + 1) * 16L - 16L * symbols) {
+            throw new IllegalArgumentException("Image does not fit into a 32-bit ELF file.");
+        }
+        this.textSize = textSize;
+        this.symbols = symbols;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ELFGenerator <output> [--size BYTES[k|m|g]] [--symbols N] [--seed N]"
+                    + " [--mix rvc=40,alu=25,mem=15,branch=8,jump=4,csr=2,mul=4,upper=2]");
+            return;
+        }
+        long size = 1 << 20;
+        int symbols = 1000;
+        long seed = 1;
+        String mix = null;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--size":
+                    size = parseSize(args[i + 1]);
+                    break;
+                case "--symbols":
+                    symbols = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[i + 1]);
+                    break;
+                case "--mix":
+                    mix = args[i + 1];
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        ELFGenerator generator = new ELFGenerator(size, symbols, seed);
+        if (mix != null) {
+            generator.mix(mix);
+        }
+        generator.write(Paths.get(args[0]));
+        System.out.println("Written " + generator.getInstructionCount() + " instructions to " + args[0]);
+    }
+
+    static long parseSize(String size) {
+        char suffix = Character.toLowerCase(size.charAt(size.length() - 1));
+        int shift = suffix == 'k' ? 10 : suffix == 'm' ? 20 : suffix == 'g' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1)) << shift;
+    }
+
+    public ELFGenerator mix(String spec) {
+        for (String part : spec.split(",")) {
+            String[] pair = part.split("=");
+            int kind = -1;
+            for (int i = 0; i < KINDS.length; i++) {
+                if (KINDS[i].equals(pair[0].trim())) {
+                    kind = i;
+                }
+            }
+            if (kind == -1 || pair.length != 2) {
+                throw new IllegalArgumentException("Unknown instruction kind in " + part);
+            }
+            weights[kind] = Integer.parseInt(pair[1].trim());
+        }
+        return this;
+    }
+
+    public long getInstructionCount() {
+        return instructions;
+    }
+
+    public void write(Path path) throws IOException {
+        random = new Random(seed);
+        instructions = 0;
+        buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+        long strSize = 1;
+        for (int i = 0; i < symbols; i++) {
+            strSize += symbolName(i).length + 1;
+        }
+        long textOffset = HEADER_SIZE;
+        long symOffset = align(textOffset + textSize);
+        long symSize = (symbols + 1) * 16L;
+        long strOffset = symOffset + symSize;
+        long shstrOffset = align(strOffset + strSize);
+        long shOffset = align(shstrOffset + SECTION_NAMES.length);
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = out;
+            buffer.put(new byte[] {0x7f, 'E', 'L', 'F', 1, 1, 1});
+            buffer.put(new byte[9]);
+            buffer.putShort((short) 2).putShort((short) 0xf3).putInt(1).putInt(TEXT_ADDRESS).putInt(0)
+                    .putInt((int) shOffset).putInt(0).putShort((short) HEADER_SIZE).putShort((short) 32)
+                    .putShort((short) 0).putShort((short) 40).putShort((short) 5).putShort((short) 4);
+
+            int[] values = writeText();
+            pad(symOffset);
+
+            put(new byte[16]);
+            int name = 1;
+            for (int i = 0; i < symbols; i++) {
+                int next = i + 1 < symbols ? values[i + 1] : (int) (TEXT_ADDRESS + textSize);
+                boolean function = i % 8 != 7;
+                reserve(16);
+                buffer.putInt(name).putInt(values[i]).putInt(function ? next - values[i] : 4)
+                        .put((byte) (function ? 0x12 : 0x11)).put((byte) 0).putShort((short) 1);
+                name += symbolName(i).length + 1;
+            }
+
+            put(new byte[1]);
+            for (int i = 0; i < symbols; i++) {
+                put(symbolName(i));
+                put(new byte[1]);
+            }
+            pad(shstrOffset);
+            put(SECTION_NAMES);
+            pad(shOffset);
+
+            put(new byte[40]);
+            putSection(1, 1, 6, TEXT_ADDRESS, textOffset, textSize, 0, 0);
+            putSection(7, 2, 0, 0, symOffset, symSize, 3, 16);
+            putSection(15, 3, 0, 0, strOffset, strSize, 0, 0);
+            putSection(23, 3, 0, 0, shstrOffset, SECTION_NAMES.length, 0, 0);
+            flush();
+        } finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    private int[] writeText() throws IOException {
+        int[] values = new int[symbols];
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int symbol = 0;
+        for (long offset = 0; offset < textSize; ) {
+            while (symbol < symbols && offset >= textSize * symbol / symbols) {
+                values[symbol++] = (int) (TEXT_ADDRESS + offset);
+            }
+            int kind = pick(total);
+            reserve(4);
+            if (kind == 0 || textSize - offset < 4) {
+                buffer.putShort((short) compressed());
+                offset += 2;
+            } else {
+                buffer.putInt(instruction(kind, offset));
+                offset += 4;
+            }
+            instructions++;
+        }
+        while (symbol < symbols) {
+            values[symbol++] = (int) (TEXT_ADDRESS + textSize - 2);
+        }
+        return values;
+    }
+
+    private int pick(int total) {
+        int value = random.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    private int compressed() {
+        while (true) {
+            int code = random.nextInt(0x10000);
+            if ((code & 0b11) != 0b11 && code != 0 && (code & 0xe003) != 0x8000) {
+                return code;
+            }
+        }
+    }
+
+    private int instruction(int kind, long offset) {
+        switch (kind) {
+            case 1:
+                return random.nextBoolean() ? register(random.nextInt(8)) : immediate();
+            case 2:
+                return random.nextBoolean() ? load() : store();
+            case 3:
+                return branch(target(offset, 1 << 12));
+            case 4:
+                return random.nextInt(4) == 0 ? jumpRegister() : jump(target(offset, 1 << 20));
+            case 5:
+                return system();
+            case 6:
+                return 1 << 25 | register(random.nextInt(8));
+            default:
+                return random.nextInt(1 << 20) << 12 | rd() | (random.nextBoolean() ? 0b0110111 : 0b0010111);
+        }
+    }
+
+    private int register(int funct3) {
+        int funct7 = (funct3 == 0b000 || funct3 == 0b101) && random.nextBoolean() ? 0x20 : 0;
+        return funct7 << 25 | rs2() | rs1() | funct3 << 12 | rd() | 0b0110011;
+    }
+
+    private int immediate() {
+        int funct3 = random.nextInt(8);
+        int immediate;
+        if (funct3 == 0b001) {
+            immediate = rs2();
+        } else if (funct3 == 0b101) {
+            immediate = (random.nextBoolean() ? 0x40000000 : 0) | rs2();
+        } else {
+            immediate = random.nextInt(4096) << 20;
+        }
+        return immediate | rs1() | funct3 << 12 | rd() | 0b0010011;
+    }
+
+    private int load() {
+        int funct3 = LOAD_FUNCTIONS[random.nextInt(LOAD_FUNCTIONS.length)];
+        return random.nextInt(4096) << 20 | rs1() | funct3 << 12 | rd() | 0b0000011;
+    }
+
+    private int store() {
+        int offset = random.nextInt(4096);
+        return (offset >> 5) << 25 | rs2() | rs1() | random.nextInt(3) << 12 | (offset & 0x1f) << 7 | 0b0100011;
+    }
+
+    private int branch(int offset) {
+        return (offset >> 12 & 1) << 31 | (offset >> 5 & 0x3f) << 25 | rs2() | rs1()
+                | BRANCH_FUNCTIONS[random.nextInt(BRANCH_FUNCTIONS.length)] << 12
+                | (offset >> 1 & 0xf) << 8 | (offset >> 11 & 1) << 7 | 0b1100011;
+    }
+
+    private int jump(int offset) {
+        return (offset >> 20 & 1) << 31 | (offset >> 1 & 0x3ff) << 21 | (offset >> 11 & 1) << 20
+                | (offset >> 12 & 0xff) << 12 | rd() | 0b1101111;
+    }
+
+    private int jumpRegister() {
+        return random.nextInt(4096) << 20 | rs1() | rd() | 0b1100111;
+    }
+
+    private int system() {
+        if (random.nextInt(16) == 0) {
+            return (random.nextBoolean() ? 1 << 20 : 0) | 0b1110011;
+        }
+        return CSRS[random.nextInt(CSRS.length)] << 20 | rs1()
+                | CSR_FUNCTIONS[random.nextInt(CSR_FUNCTIONS.length)] << 12 | rd() | 0b1110011;
+    }
+
+    private int rd() {
+        return random.nextInt(32) << 7;
+    }
+
+    private int rs1() {
+        return random.nextInt(32) << 15;
+    }
+
+    private int rs2() {
+        return random.nextInt(32) << 20;
+    }
+
+    private int target(long offset, int range) {
+        long low = Math.max(-offset, -range);
+        long high = Math.min(textSize - 2 - offset, range - 2);
+        return (int) (low + random.nextInt((int) ((high - low) / 2) + 1) * 2L);
+    }
+
+    private static byte[] symbolName(int index) {
+        return ("func_" + index).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void putSection(int name, int type, int flags, int address, long offset, long size,
+                            int link, int entrySize) throws IOException {
+        reserve(40);
+        buffer.putInt(name).putInt(type).putInt(flags).putInt(address).putInt((int) offset).putInt((int) size)
+                .putInt(link).putInt(0).putInt(4).putInt(entrySize);
+    }
+
+    private void put(byte[] bytes) throws IOException {
+        reserve(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void pad(long offset) throws IOException {
+        while (channel.position() + buffer.position() < offset) {
+            put(new byte[1]);
+        }
+    }
+
+    private void reserve(int size) throws IOException {
+        if (buffer.remaining() < size) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long align(long offset) {
+        return (offset + 3) & ~3;
+    }
+}
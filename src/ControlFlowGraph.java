@@ -0,0 +1,315 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+public class ControlFlowGraph {
+    public static final int FALLTHROUGH = 0;
+    public static final int BRANCH = 1;
+    public static final int JUMP = 2;
+    public static final int CALL = 3;
+
+    private static final String[] kindNames = {"fallthrough", "branch", "jump", "call"};
+
+    private static final int OTHER = 0;
+    private static final int CONDITIONAL = 1;
+    private static final int DIRECT = 2;
+    private static final int INDIRECT = 3;
+
+    private final InstructionTable table;
+    private final int blockCount;
+    private final int[] blockFirst;
+    private final int[] blockFunction;
+    private final int[] successorOffsets;
+    private final int[] successors;
+    private final byte[] successorKinds;
+    private final int[] predecessorOffsets;
+    private final int[] predecessors;
+    private final byte[] predecessorKinds;
+    private final int[] functionSymbols;
+    private final String[] functionNames;
+
+    private ControlFlowGraph(InstructionTable table, int blockCount, int[] blockFirst, int[] blockFunction,
+                             int[] edgeFrom, int[] edgeTo, byte[] edgeKinds, int edgeCount,
+                             int[] functionSymbols, String[] functionNames) {
+        this.table = table;
+        this.blockCount = blockCount;
+        this.blockFirst = blockFirst;
+        this.blockFunction = blockFunction;
+        this.functionSymbols = functionSymbols;
+        this.functionNames = functionNames;
+        successorOffsets = new int[blockCount + 1];
+        successors = new int[edgeCount];
+        successorKinds = new byte[edgeCount];
+        predecessorOffsets = new int[blockCount + 1];
+        predecessors = new int[edgeCount];
+        predecessorKinds = new byte[edgeCount];
+        for (int e = 0; e < edgeCount; e++) {
+            successorOffsets[edgeFrom[e] + 1]++;
+            predecessorOffsets[edgeTo[e] + 1]++;
+        }
+        for (int b = 0; b < blockCount; b++) {
+            successorOffsets[b + 1] += successorOffsets[b];
+            predecessorOffsets[b + 1] += predecessorOffsets[b];
+        }
+        int[] successorFill = Arrays.copyOf(successorOffsets, blockCount);
+        int[] predecessorFill = Arrays.copyOf(predecessorOffsets, blockCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int s = successorFill[edgeFrom[e]]++;
+            successors[s] = edgeTo[e];
+            successorKinds[s] = edgeKinds[e];
+            int p = predecessorFill[edgeTo[e]]++;
+            predecessors[p] = edgeFrom[e];
+            predecessorKinds[p] = edgeKinds[e];
+        }
+    }
+
+    public static ControlFlowGraph build(InstructionTable table, ELFParser source) {
+        String[] mnemonics = table.getMnemonics();
+        byte[] classes = new byte[mnemonics.length];
+        for (int m = 0; m < mnemonics.length; m++) {
+            classes[m] = (byte) classify(mnemonics[m]);
+        }
+        int size = table.size();
+
+        List<long[]> functions = new ArrayList<>();
+        for (int k = 0; k < source.getSymbolCount(); k++) {
+            if (source.isFunction(k) && source.getSymbolValue(k) <= 0xFFFFFFFFL
+                    && table.find((int) source.getSymbolValue(k)) >= 0) {
+                functions.add(new long[]{source.getSymbolValue(k), source.getSymbolSize(k), k});
+            }
+        }
+        functions.sort((a, b) -> Long.compare(a[0], b[0]));
+        int[] functionStarts = new int[functions.size()];
+        int[] functionEnds = new int[functions.size()];
+        int[] functionSymbols = new int[functions.size()];
+        String[] functionNames = new String[functions.size()];
+        for (int f = 0; f < functions.size(); f++) {
+            long[] next = f + 1 < functions.size() ? functions.get(f + 1) : null;
+            functionStarts[f] = table.find((int) functions.get(f)[0]);
+            if (functions.get(f)[1] != 0) {
+                functionEnds[f] = table.ceiling((int) (functions.get(f)[0] + functions.get(f)[1]));
+            } else {
+                int end = sectionEnd(table, source, functions.get(f)[0]);
+                functionEnds[f] = next == null ? end : Math.min(end, table.find((int) next[0]));
+            }
+            functionSymbols[f] = (int) functions.get(f)[2];
+            functionNames[f] = source.getSymbolName(functionSymbols[f]);
+        }
+
+        BitSet leaders = new BitSet(size + 1);
+        leaders.set(0);
+        for (int k = 0; k < source.getCodeSectionCount(); k++) {
+            leaders.set(table.ceiling((int) source.getCodeSectionAddress(k)));
+        }
+        for (int start : functionStarts) {
+            leaders.set(start);
+        }
+        for (int r = 0; r < size; r++) {
+            int kind = classes[table.getOpcode(r)];
+            if (kind == CONDITIONAL || kind == DIRECT) {
+                int target = table.find(table.getAddress(r) + table.getImmediate(r));
+                if (target >= 0) {
+                    leaders.set(target);
+                }
+            }
+            if (kind == CONDITIONAL || kind != OTHER && table.getRd(r) <= 0) {
+                leaders.set(r + 1);
+            }
+        }
+        leaders.clear(size, size + 1);
+
+        int blockCount = leaders.cardinality();
+        int[] blockFirst = new int[blockCount + 1];
+        int[] blockFunction = new int[blockCount];
+        for (int b = 0, r = leaders.nextSetBit(0); r >= 0; b++, r = leaders.nextSetBit(r + 1)) {
+            blockFirst[b] = r;
+        }
+        blockFirst[blockCount] = size;
+
+        int[] edgeFrom = new int[Math.max(16, blockCount)];
+        int[] edgeTo = new int[edgeFrom.length];
+        byte[] edgeKinds = new byte[edgeFrom.length];
+        int edgeCount = 0;
+        int function = -1;
+        for (int b = 0; b < blockCount; b++) {
+            int first = blockFirst[b];
+            int last = blockFirst[b + 1] - 1;
+            while (function + 1 < functionStarts.length && functionStarts[function + 1] <= first) {
+                function++;
+            }
+            blockFunction[b] = function >= 0 && first < functionEnds[function] ? function : -1;
+
+            for (int r = first; r <= last; r++) {
+                int kind = classes[table.getOpcode(r)];
+                int target = kind == CONDITIONAL || kind == DIRECT
+                        ? table.find(table.getAddress(r) + table.getImmediate(r)) : -1;
+                int edge;
+                if (r < last || kind == OTHER || kind != CONDITIONAL && table.getRd(r) > 0) {
+                    if (kind != DIRECT || target < 0 || target >= size) {
+                        continue;
+                    }
+                    edge = CALL;
+                } else if (kind == INDIRECT || target < 0 || target >= size) {
+                    edge = -1;
+                } else {
+                    edge = kind == CONDITIONAL ? BRANCH : JUMP;
+                }
+                if (edgeCount + 2 > edgeFrom.length) {
+                    edgeFrom = Arrays.copyOf(edgeFrom, edgeFrom.length * 2);
+                    edgeTo = Arrays.copyOf(edgeTo, edgeFrom.length);
+                    edgeKinds = Arrays.copyOf(edgeKinds, edgeFrom.length);
+                }
+                if (edge >= 0) {
+                    edgeFrom[edgeCount] = b;
+                    edgeTo[edgeCount] = blockOf(blockFirst, blockCount, target);
+                    edgeKinds[edgeCount++] = (byte) edge;
+                }
+            }
+            int kind = classes[table.getOpcode(last)];
+            boolean falls = kind == OTHER || kind == CONDITIONAL || table.getRd(last) > 0;
+            if (falls && b + 1 < blockCount
+                    && table.getAddress(last + 1) == table.getAddress(last) + table.getLength(last)) {
+                if (edgeCount + 1 > edgeFrom.length) {
+                    edgeFrom = Arrays.copyOf(edgeFrom, edgeFrom.length * 2);
+                    edgeTo = Arrays.copyOf(edgeTo, edgeFrom.length);
+                    edgeKinds = Arrays.copyOf(edgeKinds, edgeFrom.length);
+                }
+                edgeFrom[edgeCount] = b;
+                edgeTo[edgeCount] = b + 1;
+                edgeKinds[edgeCount++] = FALLTHROUGH;
+            }
+        }
+        return new ControlFlowGraph(table, blockCount, blockFirst, blockFunction, edgeFrom, edgeTo, edgeKinds,
+                edgeCount, functionSymbols, functionNames);
+    }
+
+    private static int classify(String mnemonic) {
+        switch (mnemonic) {
+            case "BEQ":
+            case "BNE":
+            case "BLT":
+            case "BGE":
+            case "BLTU":
+            case "BGEU":
+            case "C.BEQZ":
+            case "C.BNEZ":
+                return CONDITIONAL;
+            case "JAL":
+            case "C.J":
+            case "C.JAL":
+                return DIRECT;
+            case "JALR":
+            case "C.JR":
+            case "C.JALR":
+                return INDIRECT;
+            default:
+                return OTHER;
+        }
+    }
+
+    private static int sectionEnd(InstructionTable table, ELFParser source, long address) {
+        for (int k = 0; k < source.getCodeSectionCount(); k++) {
+            long start = source.getCodeSectionAddress(k);
+            long end = start + source.getCodeSectionSize(k);
+            if (address >= start && address < end) {
+                return end > 0xFFFFFFFFL ? table.size() : table.ceiling((int) end);
+            }
+        }
+        return table.size();
+    }
+
+    private static int blockOf(int[] blockFirst, int blockCount, int record) {
+        int low = 0;
+        int high = blockCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (blockFirst[middle] <= record) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getBlockFirst(int block) {
+        return blockFirst[block];
+    }
+
+    public int getBlockEnd(int block) {
+        return blockFirst[block + 1];
+    }
+
+    public int getBlockAddress(int block) {
+        return table.getAddress(blockFirst[block]);
+    }
+
+    public int getBlockFunction(int block) {
+        return blockFunction[block];
+    }
+
+    public int getFunctionCount() {
+        return functionSymbols.length;
+    }
+
+    public int getFunctionSymbol(int function) {
+        return functionSymbols[function];
+    }
+
+    public String getFunctionName(int function) {
+        return functionNames[function];
+    }
+
+    public int getSuccessorCount(int block) {
+        return successorOffsets[block + 1] - successorOffsets[block];
+    }
+
+    public int getSuccessor(int block, int index) {
+        return successors[successorOffsets[block] + index];
+    }
+
+    public int getSuccessorKind(int block, int index) {
+        return successorKinds[successorOffsets[block] + index];
+    }
+
+    public int getPredecessorCount(int block) {
+        return predecessorOffsets[block + 1] - predecessorOffsets[block];
+    }
+
+    public int getPredecessor(int block, int index) {
+        return predecessors[predecessorOffsets[block] + index];
+    }
+
+    public int getPredecessorKind(int block, int index) {
+        return predecessorKinds[predecessorOffsets[block] + index];
+    }
+
+    public void write(Writer out) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int function = -1;
+        for (int b = 0; b < blockCount; b++) {
+            if (blockFunction[b] != function) {
+                function = blockFunction[b];
+                if (function >= 0) {
+                    out.write("function " + functionNames[function] + "\n");
+                }
+            }
+            int last = blockFirst[b + 1] - 1;
+            line.setLength(0);
+            line.append(String.format("block %d %08x-%08x", b, table.getAddress(blockFirst[b]),
+                    table.getAddress(last) + table.getLength(last)));
+            for (int k = 0; k < getSuccessorCount(b); k++) {
+                line.append(k == 0 ? " ->" : ",").append(' ').append(getSuccessor(b, k))
+                        .append(' ').append(kindNames[getSuccessorKind(b, k)]);
+            }
+            out.write(line.append('\n').toString());
+        }
+    }
+}
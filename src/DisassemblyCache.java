@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DisassemblyCache {
+    private static final int FORMAT = 2;
+    private static final Class<?>[] WRITERS = {RISCV2Assembler.class, ELFParser.class, Main.class};
+    private static final String VERSION = version();
+
+    private static final int MAGIC = 0x43445652;
+    private static final int HEADER_SIZE = 16;
+    private static final String SUFFIX = ".dis";
+
+    private final Path directory;
+    private final long capacity;
+
+    public DisassemblyCache(Path directory, long capacity) throws IOException {
+        this.directory = directory;
+        this.capacity = capacity;
+        Files.createDirectories(directory);
+    }
+
+    public static String key(ELFParser source, boolean annotated) throws IOException {
+        return hex(source.digest(annotated ? VERSION + ":annotated" : VERSION));
+    }
+
+    private static String version() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Class<?> writer : WRITERS) {
+            try (InputStream in = writer.getResourceAsStream(writer.getSimpleName() + ".class")) {
+                digest.update(writer.getName().getBytes(StandardCharsets.UTF_8));
+                if (in != null) {
+                    digest.update(in.readAllBytes());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return FORMAT + ":" + hex(digest.digest());
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(Character.forDigit((b >>> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+
+    public boolean load(String key, Path output) throws IOException {
+        Path entry = directory.resolve(key + SUFFIX);
+        try (FileChannel in = FileChannel.open(entry, StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) {
+                Files.deleteIfExists(entry);
+                return false;
+            }
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT || mapped.getLong(8) != in.size() - HEADER_SIZE) {
+                Files.deleteIfExists(entry);
+                return false;
+            }
+            mapped.position(HEADER_SIZE);
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (mapped.hasRemaining()) {
+                    out.write(mapped);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        return true;
+    }
+
+    public void store(String key, Path listing) throws IOException {
+        long size = Files.size(listing);
+        if (size + HEADER_SIZE > capacity) {
+            return;
+        }
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.WRITE);
+             FileChannel in = FileChannel.open(listing, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT).putLong(size).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (long position = 0; position < size; ) {
+                position += in.transferTo(position, size - position, out);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, directory.resolve(key + SUFFIX),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        evict();
+    }
+
+    private synchronized void evict() throws IOException {
+        List<Path> entries;
+        try (Stream<Path> paths = Files.list(directory)) {
+            entries = paths.filter(path -> path.getFileName().toString().endsWith(SUFFIX))
+                    .collect(Collectors.toCollection(ArrayList::new));
+        }
+        List<long[]> stamps = new ArrayList<>();
+        long total = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            try {
+                long size = Files.size(entries.get(i));
+                stamps.add(new long[]{Files.getLastModifiedTime(entries.get(i)).toMillis(), size, i});
+                total += size;
+            } catch (NoSuchFileException e) {
+                continue;
+            }
+        }
+        stamps.sort(Comparator.comparingLong(stamp -> stamp[0]));
+        for (long[] stamp : stamps) {
+            if (total <= capacity) {
+                break;
+            }
+            Files.deleteIfExists(entries.get((int) stamp[2]));
+            total -= stamp[1];
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+public class DisassemblyServer {
+    private static final int CACHED_IMAGES = 16;
+
+    private final Path socket;
+    private final boolean mapped;
+    private final ExecutorService workers;
+    private final Map<String, Image> images = new LinkedHashMap<>(CACHED_IMAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            if (size() > CACHED_IMAGES) {
+                eldest.getValue().close();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    public DisassemblyServer(Path socket, int jobs, boolean mapped) {
+        this.socket = socket;
+        this.mapped = mapped;
+        this.workers = Executors.newFixedThreadPool(Math.max(1, jobs));
+    }
+
+    public void serve() throws IOException {
+        Files.deleteIfExists(socket);
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException ignored) {
+                }
+            }));
+            while (true) {
+                SocketChannel client = server.accept();
+                workers.submit(() -> handle(client));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(Channels.newWriter(client, StandardCharsets.UTF_8))) {
+            String request = in.readLine();
+            if (request == null || request.isBlank()) {
+                return;
+            }
+            String error = answer(request.trim(), out);
+            if (error != null) {
+                out.write("error: " + error + "\n");
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private String answer(String request, Writer out) throws IOException {
+        Path input = FileSystems.getDefault().getPath(request);
+        String query = null;
+        int space = request.lastIndexOf(' ');
+        if (space > 0 && !Files.exists(input)) {
+            input = FileSystems.getDefault().getPath(request.substring(0, space));
+            query = request.substring(space + 1);
+        }
+        Image image;
+        try {
+            image = image(input);
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            return "No such file " + input;
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+
+        ELFParser source = image.source;
+        long from = 0;
+        long to = 1L << 32;
+        if (query != null) {
+            int separator = query.indexOf(':');
+            if (separator >= 0) {
+                try {
+                    from = Long.decode(query.substring(0, separator));
+                    to = Long.decode(query.substring(separator + 1));
+                } catch (NumberFormatException e) {
+                    return "Incorrect range " + query + ", expected FROM:TO";
+                }
+            } else {
+                int index = source.findSymbol(query);
+                if (index < 0) {
+                    return "No symbol " + query + " in " + input;
+                }
+                from = source.getSymbolValue(index);
+                to = source.getSymbolEnd(index);
+            }
+        }
+        RISCV2Assembler.write(out, image.sections, from, to);
+        if (query == null) {
+            Main.writeSymtab(out, source);
+        }
+        return null;
+    }
+
+    private Image image(Path input) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(input, BasicFileAttributes.class);
+        Object identity = attributes.fileKey() != null ? attributes.fileKey() : input.toRealPath();
+        String key = identity + ":" + attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + ":" + attributes.size();
+        Image image;
+        synchronized (images) {
+            image = images.computeIfAbsent(key, k -> new Image(input, mapped));
+        }
+        try {
+            image.load();
+        } catch (IOException | AssertionError e) {
+            synchronized (images) {
+                images.remove(key, image);
+            }
+            throw e;
+        }
+        return image;
+    }
+
+    private static class Image {
+        private final Path input;
+        private final boolean mapped;
+        private ELFParser source;
+        private RISCV2Assembler[] sections;
+
+        private Image(Path input, boolean mapped) {
+            this.input = input;
+            this.mapped = mapped;
+        }
+
+        private synchronized void load() throws IOException {
+            if (sections == null) {
+                ELFParser parser = new ELFParser(input, mapped);
+                try {
+                    parser.parseELF();
+                    RISCV2Assembler[] decoders = RISCV2Assembler.sections(parser);
+                    RISCV2Assembler.prepare(decoders, decoders.length >= RISCV2Assembler.PARALLEL_SECTIONS
+                            ? ForkJoinPool.commonPool() : null);
+                    source = parser;
+                    sections = decoders;
+                } catch (IOException | AssertionError e) {
+                    parser.close();
+                    throw e;
+                }
+            }
+        }
+
+        private void close() {
+            try {
+                if (source != null) {
+                    source.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ELFDiff {
+    private static final long MAX_ALIGNMENT = 1L << 22;
+
+    private static final int IMMEDIATE = 0;
+    private static final int LOCAL = 1;
+    private static final int FUNCTION = 2;
+    private static final int SYMBOL = 3;
+    private static final int ABSOLUTE = 4;
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final Image oldImage;
+    private final Image newImage;
+
+    public ELFDiff(ELFParser oldSource, ByteBuffer oldText, ELFParser newSource, ByteBuffer newText) {
+        this.oldImage = new Image(oldSource, oldText, nameIds);
+        this.newImage = new Image(newSource, newText, nameIds);
+    }
+
+    public void write(Writer out, ForkJoinPool pool) throws IOException {
+        ForkJoinTask<?> decodeOld = pool.submit(oldImage::decode);
+        newImage.decode();
+        decodeOld.join();
+
+        List<String> names = new ArrayList<>();
+        List<ForkJoinTask<String>> results = new ArrayList<>();
+        for (Map.Entry<String, Integer> function : newImage.functions.entrySet()) {
+            Integer old = oldImage.functions.get(function.getKey());
+            if (old != null) {
+                names.add(function.getKey());
+                results.add(pool.submit(() -> compare(function.getKey(), old, function.getValue())));
+            }
+        }
+
+        int removed = 0;
+        for (Map.Entry<String, Integer> function : oldImage.functions.entrySet()) {
+            if (!newImage.functions.containsKey(function.getKey())) {
+                out.write("removed " + function.getKey() + "\n");
+                removed++;
+            }
+        }
+        int added = 0;
+        for (Map.Entry<String, Integer> function : newImage.functions.entrySet()) {
+            if (!oldImage.functions.containsKey(function.getKey())) {
+                out.write("added " + function.getKey() + "\n");
+                added++;
+            }
+        }
+        int changed = 0;
+        for (ForkJoinTask<String> result : results) {
+            String report = result.join();
+            if (report != null) {
+                out.write(report);
+                changed++;
+            }
+        }
+        out.write(String.format("%d functions compared: %d changed, %d unchanged, %d added, %d removed\n",
+                names.size(), changed, names.size() - changed, added, removed));
+    }
+
+    private String compare(String name, int oldFunction, int newFunction) {
+        long[] before = oldImage.keys(oldFunction);
+        long[] after = newImage.keys(newFunction);
+        if (Arrays.equals(before, after)) {
+            return null;
+        }
+        int oldFirst = oldImage.first(oldFunction);
+        int newFirst = newImage.first(newFunction);
+        int oldCount = before.length / 2;
+        int newCount = after.length / 2;
+        StringBuilder result = new StringBuilder();
+        int differences = 0;
+        if ((long) oldCount * newCount > MAX_ALIGNMENT) {
+            int common = Math.min(oldCount, newCount);
+            for (int i = 0; i < Math.max(oldCount, newCount); i++) {
+                if (i >= common || !same(before, i, after, i)) {
+                    if (i < oldCount) {
+                        result.append('-').append(oldImage.format(oldFirst + i));
+                    }
+                    if (i < newCount) {
+                        result.append('+').append(newImage.format(newFirst + i));
+                    }
+                    differences++;
+                }
+            }
+        } else {
+            int[][] common = new int[oldCount + 1][newCount + 1];
+            for (int i = oldCount - 1; i >= 0; i--) {
+                for (int j = newCount - 1; j >= 0; j--) {
+                    common[i][j] = same(before, i, after, j)
+                            ? common[i + 1][j + 1] + 1 : Math.max(common[i + 1][j], common[i][j + 1]);
+                }
+            }
+            int i = 0;
+            int j = 0;
+            while (i < oldCount || j < newCount) {
+                if (i < oldCount && j < newCount && same(before, i, after, j)) {
+                    i++;
+                    j++;
+                } else if (j == newCount || i < oldCount && common[i + 1][j] >= common[i][j + 1]) {
+                    result.append('-').append(oldImage.format(oldFirst + i++));
+                    differences++;
+                } else {
+                    result.append('+').append(newImage.format(newFirst + j++));
+                    differences++;
+                }
+            }
+        }
+        return "changed " + name + " (" + differences + " lines)\n" + result;
+    }
+
+    private static boolean same(long[] before, int i, long[] after, int j) {
+        return before[2 * i] == after[2 * j] && before[2 * i + 1] == after[2 * j + 1];
+    }
+
+    private static class Image {
+        private final ELFParser source;
+        private final RISCV2Assembler assembler;
+        private final Map<String, Integer> functions = new LinkedHashMap<>();
+        private final int[] starts;
+        private final int[] ends;
+        private final int[] ids;
+        private final SymbolIndex symbols;
+        private final int[] symbolIds;
+        private InstructionTable table;
+
+        private Image(ELFParser source, ByteBuffer text, Map<String, Integer> nameIds) {
+            this.source = source;
+            this.assembler = new RISCV2Assembler(text, source);
+            this.symbols = SymbolIndex.build(source);
+            this.symbolIds = new int[symbols.size()];
+            for (int e = 0; e < symbolIds.length; e++) {
+                symbolIds[e] = nameIds.computeIfAbsent(symbols.getName(e), key -> nameIds.size());
+            }
+            List<long[]> sorted = new ArrayList<>();
+            long address = source.getTextAddress();
+            for (int k = 0; k < source.getSymbolCount(); k++) {
+                long start = source.getSymbolValue(k);
+                long size = source.getSymbolSize(k);
+                if (source.isFunction(k) && size != 0 && start >= address && start + size <= address + text.limit()) {
+                    String name = source.getSymbolName(k);
+                    if (functions.putIfAbsent(name, k) == null) {
+                        int id = nameIds.computeIfAbsent(name, key -> nameIds.size());
+                        sorted.add(new long[]{start, start + size, id});
+                    }
+                }
+            }
+            sorted.sort((a, b) -> Long.compare(a[0], b[0]));
+            starts = new int[sorted.size()];
+            ends = new int[sorted.size()];
+            ids = new int[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                starts[i] = (int) sorted.get(i)[0];
+                ends[i] = (int) sorted.get(i)[1];
+                ids[i] = (int) sorted.get(i)[2];
+            }
+        }
+
+        private void decode() {
+            table = assembler.decodeTable();
+        }
+
+        private int first(int function) {
+            return table.ceiling((int) source.getSymbolValue(function));
+        }
+
+        private long[] keys(int function) {
+            int start = (int) source.getSymbolValue(function);
+            long end = source.getSymbolValue(function) + source.getSymbolSize(function);
+            int from = first(function);
+            int to = from;
+            while (to < table.size() && Integer.toUnsignedLong(table.getAddress(to)) < end) {
+                to++;
+            }
+            long[] keys = new long[2 * (to - from)];
+            for (int r = from; r < to; r++) {
+                int kind;
+                long value;
+                if (table.getTarget(r) == InstructionTable.NO_TARGET) {
+                    kind = IMMEDIATE;
+                    value = table.getImmediate(r);
+                } else {
+                    int target = table.getAddress(r) + table.getImmediate(r);
+                    int callee = locate(target);
+                    int symbol = callee < 0 ? symbols.lookup(target) : -1;
+                    if (Integer.toUnsignedLong(target) >= Integer.toUnsignedLong(start)
+                            && Integer.toUnsignedLong(target) < end) {
+                        kind = LOCAL;
+                        value = target - start;
+                    } else if (callee >= 0) {
+                        kind = FUNCTION;
+                        value = (long) ids[callee] << 32 | Integer.toUnsignedLong(target - starts[callee]);
+                    } else if (symbol >= 0) {
+                        kind = SYMBOL;
+                        value = (long) symbolIds[symbol] << 32
+                                | Integer.toUnsignedLong(target - symbols.getStart(symbol));
+                    } else {
+                        kind = ABSOLUTE;
+                        value = Integer.toUnsignedLong(target);
+                    }
+                }
+                keys[2 * (r - from)] = (long) table.getOpcode(r) << 32 | kind << 24 | (table.getRd(r) & 0xff) << 16
+                        | (table.getRs1(r) & 0xff) << 8 | table.getRs2(r) & 0xff;
+                keys[2 * (r - from) + 1] = value;
+            }
+            return keys;
+        }
+
+        private int locate(int address) {
+            int low = 0;
+            int high = starts.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (Integer.compareUnsigned(starts[middle], address) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (high >= 0 && Integer.compareUnsigned(address, ends[high]) < 0) {
+                return high;
+            }
+            return -1;
+        }
+
+        private String format(int record) {
+            return assembler.format(table.getAddress(record));
+        }
+    }
+}
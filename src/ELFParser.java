@@ -1,60 +1,56 @@
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-public class ELFParser {
-    private final HashMap<Integer, String> locs = new HashMap<>();
-    private final StringBuilder allLocs = new StringBuilder();
-    private final HashMap<String, String> indexes = new HashMap<>(Map.of(
-            "0000000000000000", "UNDEF",
-            "1111111100000000", "LOPROC",
-            "1111111100000001", "AFTER",
-            "1111111100011111", "HIPROC",
-            "1111111100100000", "LOOS",
-            "1111111100111111", "HIOS",
-            "1111111111110001", "ABS",
-            "1111111111110010", "COMMON",
-            "1111111111111111", "XINDEX"
-    ));
-
-    private final String[] vises = {"DEFAULT", "INTERNAL", "HIDDEN", "PROTECTED"};
-
-    private final HashMap<Integer, String> types = new HashMap<>(Map.of(
-            0, "NOTYPE",
-            1, "OBJECT",
-            2, "FUNC",
-            3, "SECTION",
-            4, "FILE",
-            5, "COMMON",
-            6, "TLS",
-            10, "LOOS",
-            12, "HIOS",
-            13, "SPARC_REGISTER"
-    ));
-
-    private final HashMap<Integer, String> binds = new HashMap<>(Map.of(
-            0, "LOCAL",
-            1, "GLOBAL",
-            2, "WEAK",
-            10, "LOOS",
-            11, "OS",
-            12, "HIOS",
-            13, "LOPROC",
-            14, "PROC",
-            15, "HIPROC"
-    ));
-
-    private final byte[] source;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+
+public class ELFParser implements AutoCloseable {
+    private static final int READ_BLOCK = 1 << 20;
+    private static final int SHF_EXECINSTR = 0x4;
+
+    private final LabelTable locs = new LabelTable();
+    private int[] targets = new int[0];
+
+    private static final String[] vises = {"DEFAULT", "INTERNAL", "HIDDEN", "PROTECTED"};
+
+    private static final String[] types = {
+            "NOTYPE", "OBJECT", "FUNC", "SECTION",
+            "FILE", "COMMON", "TLS", null,
+            null, null, "LOOS", "OC",
+            "HIOS", "SPARC_REGISTER", "PROC", "HIPROC"
+    };
+
+    private static final String[] binds = {
+            "LOCAL", "GLOBAL", "WEAK", null,
+            null, null, null, null,
+            null, null, "LOOS", "OS",
+            "HIOS", "LOPROC", "PROC", "HIPROC"
+    };
+
+    private final ByteBuffer source;
+    private final FileChannel channel;
+    private final long fileSize;
+
+    private ByteBuffer nameSection;
+
+    private ByteOrder order = ByteOrder.LITTLE_ENDIAN;
 
     private long textOffset;
     private long textAddress;
     private long textSize;
 
-    private long nameSectionOffset;
+    private String[] codeNames = new String[0];
+    private long[] codeAddresses = new long[0];
+    private long[] codeOffsets = new long[0];
+    private long[] codeSizes = new long[0];
 
     private long symOffset;
     private long symSize;
@@ -62,132 +58,150 @@ public class ELFParser {
     private long strOffset;
     private long strSize;
 
+    private ByteBuffer symbols;
+    private ByteBuffer strings;
+    private int symCount;
+    private Layout layout;
+    private int[] symNames;
+    private long[] symValues;
+    private long[] symSizes;
+    private byte[] symInfos;
+    private byte[] symOthers;
+    private short[] symIndexes;
+
     protected long getTextAddress() {
         return textAddress;
     }
 
+    public long getTextSize() {
+        return textSize;
+    }
+
+    public long getSymTableSize() {
+        return (long) symCount * layout.symbolSize;
+    }
+
+    public boolean isWide() {
+        return layout == Layout.ELF64;
+    }
+
+    public int getCodeSectionCount() {
+        return codeNames.length;
+    }
+
+    public String getCodeSectionName(int index) {
+        return codeNames[index];
+    }
+
+    public long getCodeSectionAddress(int index) {
+        return codeAddresses[index];
+    }
+
+    public long getCodeSectionSize(int index) {
+        return codeSizes[index];
+    }
+
     public ELFParser(Path inputName) throws IOException {
-        this.source = Files.readAllBytes(inputName);
+        this(inputName, false);
     }
 
-    public List<String> parseELF() {
-        types.put(11, "OC");
-        types.put(14, "PROC");
-        types.put(15, "HIPROC");
-        for (int i = 61440 + 3840; i < 61440 + 3840 + 16 + 15; i++) {
-            String temp = toBin(i);
-            if (!indexes.containsKey(temp)) {
-                indexes.put(temp, "PROC");
-            }
+    public ELFParser(Path inputName, boolean mapped) throws IOException {
+        if (mapped) {
+            this.source = null;
+            this.channel = FileChannel.open(inputName, StandardOpenOption.READ);
+            this.fileSize = channel.size();
+        } else {
+            this.source = ByteBuffer.wrap(Files.readAllBytes(inputName));
+            this.channel = null;
+            this.fileSize = source.capacity();
         }
-        for (int i = 61440 + 3840 + 320; i < 61440 + 3840 + 480 + 15; i++) {
-            String temp = toBin(i);
-            if (!indexes.containsKey(temp)) {
-                indexes.put(temp, "OS");
-            }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
         }
+    }
+
+    public ByteBuffer parseELF() throws IOException {
         parseHeader();
         parseSymTable();
         return parseData();
     }
 
-    private void parseHeader() {
-        if (source[0] != Byte.decode("0x7f") ||
-                source[1] != Byte.decode("0x45") ||
-                source[2] != Byte.decode("0x4C") ||
-                source[3] != Byte.decode("0x46")
+    protected void parseHeader() throws IOException {
+        if (nameSection != null) {
+            return;
+        }
+        if (fileSize < 52) {
+            throw new AssertionError("Given file is not an .elf file.");
+        }
+        ByteBuffer ident = region(0, 16);
+        if (ident.get(0) != 0x7f ||
+                ident.get(1) != 'E' ||
+                ident.get(2) != 'L' ||
+                ident.get(3) != 'F'
         ) {
             throw new AssertionError("Given file is not an .elf file.");
         }
-        if (source[4] != Byte.decode("0x1")) {
-            throw new AssertionError("Given file is not for x32 system.");
+        if (ident.get(4) == 1) {
+            layout = Layout.ELF32;
+        } else if (ident.get(4) == 2) {
+            layout = Layout.ELF64;
+        } else {
+            throw new AssertionError("Given file is not for x32 or x64 system.");
+        }
+        if (ident.get(5) == 1) {
+            order = ByteOrder.LITTLE_ENDIAN;
+        } else if (ident.get(5) == 2) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else {
+            throw new AssertionError("Given file is neither in little nor in big endian.");
         }
-        if (source[5] != Byte.decode("0x1")) {
-            throw new AssertionError("Given file is not in little endian.");
+        if (fileSize < layout.headerSize) {
+            throw new AssertionError("Given file is not an .elf file.");
         }
-        if (source[46] + source[47] * 16 != 40) {
+        ByteBuffer header = region(0, layout.headerSize);
+        if (header.getShort(layout.sectionEntrySize) != layout.sectionHeaderSize) {
             throw new AssertionError("Section header table is not presented in given file.");
         }
-        String b0 = getFormatByte(source[32]);
-        String b1 = getFormatByte(source[33]);
-        String b2 = getFormatByte(source[34]);
-        String b3 = getFormatByte(source[35]);
-        int eShoff = fromBin("" + b3 + b2 + b1 + b0);
-
-        b0 = getFormatByte(source[48]);
-        b1 = getFormatByte(source[49]);
-        b2 = "0000";
-        b3 = "0000";
-        int eShnum = fromBin("" + b3 + b2 + b1 + b0);
-
-        b0 = getFormatByte(source[50]);
-        b1 = getFormatByte(source[51]);
-        b2 = "0000";
-        b3 = "0000";
-        int eShstrndx = fromBin("" + b3 + b2 + b1 + b0);
-
-        b0 = getFormatByte(source[eShoff + (eShstrndx) * 40 + 16]);
-        b1 = getFormatByte(source[eShoff + (eShstrndx) * 40 + 17]);
-        b2 = getFormatByte(source[eShoff + (eShstrndx) * 40 + 18]);
-        b3 = getFormatByte(source[eShoff + (eShstrndx) * 40 + 19]);
-        nameSectionOffset = fromBin("" + b3 + b2 + b1 + b0);
-
-        if (eShoff + eShnum * 40 > source.length) {
+        long eShoff = layout.word(header, layout.sectionTable);
+        int eShnum = header.getShort(layout.sectionCount) & 0xFFFF;
+        int eShstrndx = header.getShort(layout.sectionNames) & 0xFFFF;
+        int entry = layout.sectionHeaderSize;
+
+        if (eShoff < 0 || eShoff + (long) eShnum * entry > fileSize || eShstrndx >= eShnum) {
             throw new AssertionError("File header is not correct.");
         }
+        ByteBuffer sections = region(eShoff, (long) eShnum * entry);
+        nameSection = region(layout.word(sections, eShstrndx * entry + layout.sectionOffset),
+                layout.word(sections, eShstrndx * entry + layout.sectionSize));
 
-        boolean textFlag = false;
         boolean symTableFlag = false;
         boolean strTableFlag = false;
+        int[] code = new int[eShnum];
+        int codeCount = 0;
+        int nonEmpty = 0;
 
         for (int i = 0; i < eShnum; i++) {
-            b0 = getFormatByte(source[eShoff + i * 40]);
-            b1 = getFormatByte(source[eShoff + i * 40 + 1]);
-            b2 = getFormatByte(source[eShoff + i * 40 + 2]);
-            b3 = getFormatByte(source[eShoff + i * 40 + 3]);
-
-            long name = fromBin("" + b3 + b2 + b1 + b0);
-
-            b0 = getFormatByte(source[eShoff + i * 40 + 4]);
-            b1 = getFormatByte(source[eShoff + i * 40 + 5]);
-            b2 = getFormatByte(source[eShoff + i * 40 + 6]);
-            b3 = getFormatByte(source[eShoff + i * 40 + 7]);
-
-            long type = fromBin("" + b3 + b2 + b1 + b0);
-
-            b0 = getFormatByte(source[eShoff + i * 40 + 12]);
-            b1 = getFormatByte(source[eShoff + i * 40 + 13]);
-            b2 = getFormatByte(source[eShoff + i * 40 + 14]);
-            b3 = getFormatByte(source[eShoff + i * 40 + 15]);
-
-            long address = fromBin("" + b3 + b2 + b1 + b0);
-
-            b0 = getFormatByte(source[eShoff + i * 40 + 16]);
-            b1 = getFormatByte(source[eShoff + i * 40 + 17]);
-            b2 = getFormatByte(source[eShoff + i * 40 + 18]);
-            b3 = getFormatByte(source[eShoff + i * 40 + 19]);
-
-            long offset = fromBin("" + b3 + b2 + b1 + b0);
-
-            b0 = getFormatByte(source[eShoff + i * 40 + 20]);
-            b1 = getFormatByte(source[eShoff + i * 40 + 21]);
-            b2 = getFormatByte(source[eShoff + i * 40 + 22]);
-            b3 = getFormatByte(source[eShoff + i * 40 + 23]);
-
-            long size = fromBin("" + b3 + b2 + b1 + b0);
-
-            String tName = getSectionName((int) name);
-
-            if (tName.equals(".text") && type == Byte.decode("0x1")) {
-                if (textFlag) {
-                    throw new AssertionError("Given file contains 2 .text sections.");
+            int name = sections.getInt(i * entry);
+            int type = sections.getInt(i * entry + 4);
+            long flags = layout.word(sections, i * entry + layout.sectionFlags);
+            long address = layout.word(sections, i * entry + layout.sectionAddress);
+            long offset = layout.word(sections, i * entry + layout.sectionOffset);
+            long size = layout.word(sections, i * entry + layout.sectionSize);
+
+            String tName = getSectionName(name);
+
+            if (type == 1 && (tName.equals(".text") || (flags & SHF_EXECINSTR) != 0)) {
+                if (address < 0 || size < 0 || address + size > 1L << 32) {
+                    throw new AssertionError("Given file has " + tName + " above the 4 GB address space.");
                 }
-                textAddress = address;
-                textOffset = offset;
-                textSize = size;
-                textFlag = true;
+                code[codeCount++] = i;
+                nonEmpty += size != 0 ? 1 : 0;
             }
-            if (tName.equals(".symtab") && type == Byte.decode("0x2")) {
+            if (tName.equals(".symtab") && type == 2) {
                 if (symTableFlag) {
                     throw new AssertionError("Given file contains 2 .symTable sections.");
                 }
@@ -195,7 +209,7 @@ public class ELFParser {
                 symSize = size;
                 symTableFlag = true;
             }
-            if (tName.equals(".strtab") && type == Byte.decode("0x3")) {
+            if (tName.equals(".strtab") && type == 3) {
                 if (strTableFlag) {
                     throw new AssertionError("Given file contains 2 .strTable sections.");
                 }
@@ -205,9 +219,28 @@ public class ELFParser {
             }
         }
 
-        if (!textFlag) {
+        if (codeCount == 0) {
             throw new AssertionError("Given file does not contain .text section.");
         }
+        codeNames = new String[nonEmpty == 0 ? codeCount : nonEmpty];
+        codeAddresses = new long[codeNames.length];
+        codeOffsets = new long[codeNames.length];
+        codeSizes = new long[codeNames.length];
+        for (int c = 0, k = 0; c < codeCount; c++) {
+            int i = code[c];
+            long size = layout.word(sections, i * entry + layout.sectionSize);
+            if (size == 0 && nonEmpty != 0) {
+                continue;
+            }
+            codeNames[k] = getSectionName(sections.getInt(i * entry));
+            codeAddresses[k] = layout.word(sections, i * entry + layout.sectionAddress);
+            codeOffsets[k] = layout.word(sections, i * entry + layout.sectionOffset);
+            codeSizes[k++] = size;
+        }
+        int text = Math.max(0, Arrays.asList(codeNames).indexOf(".text"));
+        textAddress = codeAddresses[text];
+        textOffset = codeOffsets[text];
+        textSize = codeSizes[text];
         if (!symTableFlag) {
             throw new AssertionError("Given file does not contain .sym section.");
         }
@@ -216,173 +249,429 @@ public class ELFParser {
         }
     }
 
-    private void parseSymTable() {
+    public byte[] digest(String version) throws IOException {
+        parseHeader();
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer layout = ByteBuffer.allocate(32);
+        layout.putLong(textAddress).putLong(textSize).putLong(symSize).putLong(strSize).flip();
+        digest.update(layout);
+        digest.update(region(textOffset, textSize));
+        digest.update(region(symOffset, symSize));
+        digest.update(region(strOffset, strSize));
+        if (codeNames.length > 1) {
+            for (int k = 0; k < codeNames.length; k++) {
+                ByteBuffer section = ByteBuffer.allocate(16);
+                section.putLong(codeAddresses[k]).putLong(codeSizes[k]).flip();
+                digest.update(codeNames[k].getBytes(StandardCharsets.UTF_8));
+                digest.update(section);
+                digest.update(region(codeOffsets[k], codeSizes[k]));
+            }
+        }
+        return digest.digest();
+    }
+
+    public ByteBuffer parseText() throws IOException {
+        parseHeader();
+        openSymbols();
+        return parseData();
+    }
+
+    private void openSymbols() throws IOException {
+        if (symbols == null) {
+            symbols = region(symOffset, symSize);
+            strings = region(strOffset, strSize);
+            symCount = symbols.limit() / layout.symbolSize;
+        }
+    }
+
+    protected void parseSymTable() throws IOException {
+        openSymbols();
+        symNames = new int[symCount];
+        symValues = new long[symCount];
+        symSizes = new long[symCount];
+        symInfos = new byte[symCount];
+        symOthers = new byte[symCount];
+        symIndexes = new short[symCount];
         int c = 0;
-        int count = 0;
-        for (long i = symOffset; i < symOffset + symSize; i += 16) {
-            String b0 = getFormatByte(source[(int) (i)]);
-            String b1 = getFormatByte(source[(int) (i + 1)]);
-            String b2 = getFormatByte(source[(int) (i + 2)]);
-            String b3 = getFormatByte(source[(int) (i + 3)]);
-            long name = fromBin("" + b3 + b2 + b1 + b0);
-
-            String b4 = getFormatByte(source[(int) (i + 4)]);
-            String b5 = getFormatByte(source[(int) (i + 5)]);
-            String b6 = getFormatByte(source[(int) (i + 6)]);
-            String b7 = getFormatByte(source[(int) (i + 7)]);
-            long address = fromBin("" + b7 + b6 + b5 + b4);
-
-            String b8 = getFormatByte(source[(int) (i + 8)]);
-            String b9 = getFormatByte(source[(int) (i + 9)]);
-            String b10 = getFormatByte(source[(int) (i + 10)]);
-            String b11 = getFormatByte(source[(int) (i + 11)]);
-            long size = fromBin("" + b11 + b10 + b9 + b8);
-
-            String type = types.get(source[(int) i + 12] % 16);
-            if (type == null) {
-                type = "UNKNOWN";
+        for (int k = 0; k < symCount; k++) {
+            int i = k * layout.symbolSize;
+            symNames[k] = symbols.getInt(i);
+            symValues[k] = layout.word(symbols, i + layout.symbolValue);
+            symSizes[k] = layout.word(symbols, i + layout.symbolLength);
+            symInfos[k] = symbols.get(i + layout.symbolInfo);
+            symOthers[k] = symbols.get(i + layout.symbolOther);
+            symIndexes[k] = symbols.getShort(i + layout.symbolSection);
+
+            if ((symInfos[k] & 0xF) != 2) {
+                continue;
+            }
+            int value = (int) symValues[k];
+            if (symNames[k] == 0) {
+                if (symValues[k] <= 0xFFFFFFFFL) {
+                    locs.merge(value, " " + String.format("LOC_%05x", c));
+                }
+                c++;
+            } else if (symValues[k] > 0xFFFFFFFFL) {
+                continue;
+            } else if (nameEnd(symNames[k]) < strings.limit()) {
+                locs.merge(value, " " + getSymbolName(k));
+            } else {
+                locs.merge(value, getSymbolName(k));
             }
+        }
+    }
 
-            String bind = binds.get(source[(int) i + 12] / 16);
-            if (bind == null) {
-                bind = "UNKNOWN";
+    public void indexLabels(long from, long to, int[] targets) {
+        int[] sorted = targets.clone();
+        Arrays.sort(sorted);
+        int c = 0;
+        for (int k = 0; k < symCount; k++) {
+            int name = getSymbolNameOffset(k);
+            if (!isFunction(k)) {
+                continue;
             }
+            long value = getSymbolValue(k);
+            boolean needed = value >= from && value < to
+                    || value <= 0xFFFFFFFFL && Arrays.binarySearch(sorted, (int) value) >= 0;
+            if (name == 0) {
+                if (needed) {
+                    locs.merge((int) value, " " + String.format("LOC_%05x", c));
+                }
+                c++;
+            } else if (needed) {
+                locs.merge((int) value, nameEnd(name) < strings.limit() ? " " + readName(name) : readName(name));
+            }
+        }
+    }
 
-            String vis;
-            if (source[(int) i + 13] % 16 >= vises.length) {
-                vis = "UNKNOWN";
-            } else {
-                vis = vises[source[(int) i + 13] % 16];
+    public int findSymbol(String name) {
+        byte[] wanted = name.getBytes(StandardCharsets.UTF_8);
+        for (int k = 0; k < symCount; k++) {
+            int offset = getSymbolNameOffset(k);
+            if (offset != 0 && isFunction(k) && nameEquals(offset, wanted)) {
+                return k;
             }
+        }
+        for (int k = 0; k < symCount; k++) {
+            int offset = getSymbolNameOffset(k);
+            if (offset != 0 && nameEquals(offset, wanted)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private boolean nameEquals(int offset, byte[] wanted) {
+        long start = Integer.toUnsignedLong(offset);
+        if (start + wanted.length > strings.limit()) {
+            return false;
+        }
+        for (int i = 0; i < wanted.length; i++) {
+            if (strings.get((int) start + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return start + wanted.length == strings.limit() || strings.get((int) start + wanted.length) == 0;
+    }
 
-            String b14 = getFormatByte(source[(int) (i + 14)]);
-            String b15 = getFormatByte(source[(int) (i + 15)]);
-            String index;
-            String tempIndex = indexes.get("" + b15 + b14);
+    public long getSymbolValue(int index) {
+        return layout.word(symbols, index * layout.symbolSize + layout.symbolValue);
+    }
 
-            if (tempIndex != null) {
-                index = tempIndex;
-            } else {
-                index = String.valueOf(fromBin("" + b15 + b14));
+    public long getSymbolSize(int index) {
+        return layout.word(symbols, index * layout.symbolSize + layout.symbolLength);
+    }
+
+    public long getSymbolEnd(int index) {
+        long value = getSymbolValue(index);
+        if (getSymbolSize(index) != 0) {
+            return value + getSymbolSize(index);
+        }
+        long end = textAddress + textSize;
+        for (int k = 0; k < codeNames.length; k++) {
+            if (value >= codeAddresses[k] && value < codeAddresses[k] + codeSizes[k]) {
+                end = codeAddresses[k] + codeSizes[k];
+            }
+        }
+        for (int k = 0; k < symCount; k++) {
+            long next = getSymbolValue(k);
+            if (isFunction(k) && next > value && next < end) {
+                end = next;
             }
+        }
+        return end;
+    }
 
-            String resName = "";
-            if (name == 0 && type.equals("FUNC")) {
-                locs.merge((int) (address), " " + String.format("LOC_%05x", c), String::concat);
-                c++;
-            } else {
-                StringBuilder temp = new StringBuilder();
-                for (long j = strOffset + name; j < strOffset + strSize; j++) {
-                    if (source[(int) j] == 0) {
-                        if (type.equals("FUNC")) {
-                            locs.merge((int) (address), " " + temp.toString(), String::concat);
-                        }
-                        resName = temp.toString();
-                        break;
-                    }
-                    temp.append(new String(new byte[] {source[(int) j]}));
+    protected boolean isFunction(int index) {
+        return getSymbolType(index) == 2;
+    }
+
+    protected int getSymbolCount() {
+        return symCount;
+    }
+
+    protected int getSymbolType(int index) {
+        return symbols.get(index * layout.symbolSize + layout.symbolInfo) & 0xF;
+    }
+
+    protected int getSymbolSection(int index) {
+        return symbols.getShort(index * layout.symbolSize + layout.symbolSection) & 0xFFFF;
+    }
+
+    protected int getSymbolNameOffset(int index) {
+        return symbols.getInt(index * layout.symbolSize);
+    }
+
+    protected String getSymbolName(int index) {
+        if (getSymbolNameOffset(index) == 0 && getSymbolType(index) == 2) {
+            return "";
+        }
+        return readName(getSymbolNameOffset(index));
+    }
+
+    protected String readName(int offset) {
+        long start = Integer.toUnsignedLong(offset);
+        if (start >= strings.limit()) {
+            return "";
+        }
+        int end = nameEnd(offset);
+        byte[] name = new byte[end - (int) start];
+        strings.get((int) start, name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private int nameEnd(int offset) {
+        long start = Integer.toUnsignedLong(offset);
+        if (start >= strings.limit()) {
+            return strings.limit();
+        }
+        int end = (int) start;
+        while (end < strings.limit() && strings.get(end) != 0) {
+            end++;
+        }
+        return end;
+    }
+
+    protected void writeAllLocs(Writer out) throws IOException {
+        for (int k = 0; k < symCount; k++) {
+            String type = types[symInfos[k] & 0xF];
+            String bind = binds[(symInfos[k] & 0xFF) >>> 4];
+            String vis = (symOthers[k] & 0xF) < vises.length ? vises[symOthers[k] & 0xF] : null;
+            out.write(String.format("[%4x] 0x%-15x %5d %-8s %-8s %-8s %6s %s\n",
+                    k, symValues[k], symSizes[k],
+                    type == null ? "UNKNOWN" : type, bind == null ? "UNKNOWN" : bind,
+                    vis == null ? "UNKNOWN" : vis, getIndexName(symIndexes[k] & 0xFFFF), getSymbolName(k)));
+        }
+    }
+
+    private String getIndexName(int index) {
+        switch (index) {
+            case 0:
+                return "UNDEF";
+            case 0xff00:
+                return "LOPROC";
+            case 0xff01:
+                return "AFTER";
+            case 0xff1f:
+                return "HIPROC";
+            case 0xff20:
+                return "LOOS";
+            case 0xff3f:
+                return "HIOS";
+            case 0xfff1:
+                return "ABS";
+            case 0xfff2:
+                return "COMMON";
+            case 0xffff:
+                return "XINDEX";
+            default:
+                if (index > 0xff01 && index < 0xff1f) {
+                    return "PROC";
+                }
+                if (index > 0xff20 && index < 0xff3f) {
+                    return "OS";
                 }
-                if (resName.equals("")) {
-                    resName = temp.toString();
-                    if (type.equals("FUNC")) {
-                        locs.merge((int) (address), temp.toString(), String::concat);
+                return String.valueOf(index);
+        }
+    }
+
+    protected ByteBuffer parseData() throws IOException {
+        return region(textOffset, textSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ByteBuffer parseCode(int index) throws IOException {
+        return region(codeOffsets[index], codeSizes[index]).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ByteBuffer allocateText() {
+        checkBounds(textOffset, textSize);
+        return ByteBuffer.allocate((int) textSize).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public void readText(ByteBuffer target, BlockingQueue<Integer> loaded) throws IOException, InterruptedException {
+        checkBounds(textOffset, textSize);
+        for (int done = 0; done < textSize; ) {
+            int length = (int) Math.min(READ_BLOCK, textSize - done);
+            ByteBuffer block = target.duplicate();
+            block.limit(done + length).position(done);
+            if (channel != null) {
+                while (block.hasRemaining()) {
+                    if (channel.read(block, textOffset + block.position()) < 0) {
+                        throw new AssertionError("Section at offset " + textOffset + " is out of file bounds.");
                     }
                 }
-            }
-            allLocs.append(String.format("[%4x] 0x%-15x %5d %-8s %-8s %-8s %6s %s\n",
-                    count, address, size, type, bind, vis, index, resName));
-            count++;
-        }
-    }
-
-    private List<String> parseData() {
-        List<String> result = new ArrayList<>();
-        for (long i = textOffset; i < textOffset + textSize; i += 2) {
-            StringBuilder temp = new StringBuilder();
-            String b0 = getFormatByte(source[(int) (i)]);
-            String b1 = getFormatByte(source[(int) (i + 1)]);
-            if (b0.substring(6).equals("11")) {
-                String b2 = getFormatByte(source[(int) (i + 2)]);
-                String b3 = getFormatByte(source[(int) (i + 3)]);
-                temp.append(b3).append(b2).append(b1).append(b0);
-                i += 2;
             } else {
-                temp.append(b1).append(b0);
+                block.put(source.slice((int) textOffset + done, length));
             }
-            result.add(temp.toString());
+            done += length;
+            loaded.put(done);
         }
-        return result;
     }
 
-    protected int fromBin(String number) {
-        int result;
-        if (number.charAt(0) == '1') {
-            StringBuilder temp = new StringBuilder();
-            for (int i = 0; i < number.length(); i++) {
-                if (number.charAt(i) == '0') {
-                    temp.append('1');
-                } else {
-                    temp.append('0');
-                }
-            }
-            result = Integer.parseUnsignedInt(temp.toString(), 2);
-            result++;
-            result = -result;
-        } else {
-            result = Integer.parseUnsignedInt(number, 2);
+    private void checkBounds(long offset, long size) {
+        if (offset < 0 || size < 0 || offset + size > fileSize || size > Integer.MAX_VALUE) {
+            throw new AssertionError("Section at offset " + offset + " is out of file bounds.");
         }
-        return result;
     }
 
-    protected int fromAbsBin(String number) {
-        int result = 0;
-        int pow = 1;
-        for (int i = number.length() - 1; i > -1; i--) {
-            if (number.charAt(i) == '1') {
-                result += pow;
-            }
-            pow *= 2;
+    private ByteBuffer region(long offset, long size) throws IOException {
+        checkBounds(offset, size);
+        ByteBuffer result;
+        if (channel != null) {
+            result = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        } else {
+            result = source.slice((int) offset, (int) size);
         }
-        return result;
+        return result.order(order);
     }
 
     protected String getSym(int address) {
+        String sym = locs.get(address);
+        if (sym == null && isTarget(address)) {
+            return String.format("LOC_%05x", address);
+        }
+        return sym;
+    }
+
+    protected String getSymbolLabel(int address) {
         return locs.get(address);
     }
 
-    protected void addSym(int address) {
-        if (!locs.containsKey(address)) {
-            locs.put(address, String.format("LOC_%05x", address));
+    protected String[] getLabelNames(int[] addresses) {
+        String[] result = new String[addresses.length];
+        int c = 0;
+        for (int k = 0; k < symCount; k++) {
+            if ((symInfos[k] & 0xF) != 2) {
+                continue;
+            }
+            String name = symNames[k] == 0 ? String.format("LOC_%05x", c++) : null;
+            if (symValues[k] > 0xFFFFFFFFL) {
+                continue;
+            }
+            int i = Arrays.binarySearch(addresses, (int) symValues[k]);
+            if (i >= 0 && result[i] == null) {
+                result[i] = name != null ? name : getSymbolName(k);
+            }
         }
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] == null) {
+                result[i] = String.format("LOC_%05x", addresses[i]);
+            }
+        }
+        return result;
     }
 
-    protected String getAllLocs() {
-        return allLocs.toString();
+    protected boolean isTarget(int address) {
+        return Arrays.binarySearch(targets, address) >= 0;
     }
 
-    protected String toBin(int n) {
-        StringBuilder result = new StringBuilder();
-        while (n > 0) {
-            result.insert(0, n % 2);
-            n /= 2;
-        }
-        while (result.length() < 12) {
-            result.insert(0, "0");
+    protected int[] getSymAddresses() {
+        int[] named = locs.addresses();
+        int[] result = Arrays.copyOf(named, named.length + targets.length);
+        System.arraycopy(targets, 0, result, named.length, targets.length);
+        return unique(result);
+    }
+
+    protected void addTargets(int[] addresses) {
+        int[] result = Arrays.copyOf(targets, targets.length + addresses.length);
+        System.arraycopy(addresses, 0, result, targets.length, addresses.length);
+        targets = unique(result);
+    }
+
+    private static int[] unique(int[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[count - 1] != values[i]) {
+                values[count++] = values[i];
+            }
         }
-        return result.toString();
+        return Arrays.copyOf(values, count);
     }
 
     protected String getSectionName(int offset) {
-        long iter = offset + nameSectionOffset;
         StringBuilder temp = new StringBuilder();
-        while (source[(int) iter] != 0 || (iter == offset + nameSectionOffset)) {
-            temp.append(new String(new byte[] {source[(int) iter]}));
-            iter++;
+        for (int i = offset; i >= 0 && i < nameSection.limit() && nameSection.get(i) != 0; i++) {
+            temp.append((char) nameSection.get(i));
         }
         return temp.toString();
     }
 
-    protected String getFormatByte(byte src) {
-        return String.format("%8s", Integer.toBinaryString(src & 0xFF)).replace(' ', '0');
+    private static final class Layout {
+        private static final Layout ELF32 = new Layout(false, 52, 32, 46, 48, 50,
+                40, 8, 12, 16, 20, 16, 4, 8, 12, 13, 14);
+        private static final Layout ELF64 = new Layout(true, 64, 40, 58, 60, 62,
+                64, 8, 16, 24, 32, 24, 8, 16, 4, 5, 6);
+
+        private final boolean wide;
+        private final int headerSize;
+        private final int sectionTable;
+        private final int sectionEntrySize;
+        private final int sectionCount;
+        private final int sectionNames;
+        private final int sectionHeaderSize;
+        private final int sectionFlags;
+        private final int sectionAddress;
+        private final int sectionOffset;
+        private final int sectionSize;
+        private final int symbolSize;
+        private final int symbolValue;
+        private final int symbolLength;
+        private final int symbolInfo;
+        private final int symbolOther;
+        private final int symbolSection;
+
+        private Layout(boolean wide, int headerSize, int sectionTable, int sectionEntrySize, int sectionCount,
+                       int sectionNames, int sectionHeaderSize, int sectionFlags, int sectionAddress,
+                       int sectionOffset, int sectionSize, int symbolSize, int symbolValue, int symbolLength,
+                       int symbolInfo, int symbolOther, int symbolSection) {
+            this.wide = wide;
+            this.headerSize = headerSize;
+            this.sectionTable = sectionTable;
+            this.sectionEntrySize = sectionEntrySize;
+            this.sectionCount = sectionCount;
+            this.sectionNames = sectionNames;
+            this.sectionHeaderSize = sectionHeaderSize;
+            this.sectionFlags = sectionFlags;
+            this.sectionAddress = sectionAddress;
+            this.sectionOffset = sectionOffset;
+            this.sectionSize = sectionSize;
+            this.symbolSize = symbolSize;
+            this.symbolValue = symbolValue;
+            this.symbolLength = symbolLength;
+            this.symbolInfo = symbolInfo;
+            this.symbolOther = symbolOther;
+            this.symbolSection = symbolSection;
+        }
+
+        private long word(ByteBuffer buffer, int offset) {
+            return wide ? buffer.getLong(offset) : Integer.toUnsignedLong(buffer.getInt(offset));
+        }
     }
 }
@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class InstructionTable {
+    public static final int RECORD_SIZE = 20;
+    public static final int NO_REGISTER = -1;
+    public static final int NO_TARGET = -1;
+
+    private static final int MAGIC = 0x52495652;
+    private static final int VERSION = 1;
+
+    private final String[] mnemonics;
+    private int[] labelAddresses = new int[0];
+    private String[] labelNames = new String[0];
+
+    private int size;
+    private int[] addresses;
+    private byte[] lengths;
+    private short[] opcodes;
+    private byte[] rds;
+    private byte[] rs1s;
+    private byte[] rs2s;
+    private int[] immediates;
+    private int[] targets;
+
+    public InstructionTable(String[] mnemonics, int expected) {
+        this.mnemonics = mnemonics;
+        int capacity = Math.max(expected, 16);
+        addresses = new int[capacity];
+        lengths = new byte[capacity];
+        opcodes = new short[capacity];
+        rds = new byte[capacity];
+        rs1s = new byte[capacity];
+        rs2s = new byte[capacity];
+        immediates = new int[capacity];
+        targets = new int[capacity];
+    }
+
+    public void add(int address, int length, int opcode, int rd, int rs1, int rs2, int immediate, int target) {
+        if (size == addresses.length) {
+            grow();
+        }
+        addresses[size] = address;
+        lengths[size] = (byte) length;
+        opcodes[size] = (short) opcode;
+        rds[size] = (byte) rd;
+        rs1s[size] = (byte) rs1;
+        rs2s[size] = (byte) rs2;
+        immediates[size] = immediate;
+        targets[size] = target;
+        size++;
+    }
+
+    private void grow() {
+        int capacity = addresses.length * 2;
+        addresses = Arrays.copyOf(addresses, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        opcodes = Arrays.copyOf(opcodes, capacity);
+        rds = Arrays.copyOf(rds, capacity);
+        rs1s = Arrays.copyOf(rs1s, capacity);
+        rs2s = Arrays.copyOf(rs2s, capacity);
+        immediates = Arrays.copyOf(immediates, capacity);
+        targets = Arrays.copyOf(targets, capacity);
+    }
+
+    public void setLabels(int[] labelAddresses, String[] labelNames) {
+        this.labelAddresses = labelAddresses;
+        this.labelNames = labelNames;
+    }
+
+    public void setTarget(int index, int target) {
+        targets[index] = target;
+    }
+
+    public int find(int address) {
+        int index = ceiling(address);
+        if (index < size && addresses[index] == address) {
+            return index;
+        }
+        if (index == size && size > 0
+                && Integer.toUnsignedLong(addresses[size - 1]) + lengths[size - 1] == Integer.toUnsignedLong(address)) {
+            return size;
+        }
+        return -1;
+    }
+
+    public int ceiling(int address) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(addresses[middle], address) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    public String[] getMnemonics() {
+        return mnemonics.clone();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getAddress(int index) {
+        return addresses[index];
+    }
+
+    public int getLength(int index) {
+        return lengths[index];
+    }
+
+    public int getOpcode(int index) {
+        return opcodes[index];
+    }
+
+    public String getMnemonic(int index) {
+        return mnemonics[opcodes[index]];
+    }
+
+    public int getRd(int index) {
+        return rds[index];
+    }
+
+    public int getRs1(int index) {
+        return rs1s[index];
+    }
+
+    public int getRs2(int index) {
+        return rs2s[index];
+    }
+
+    public int getImmediate(int index) {
+        return immediates[index];
+    }
+
+    public int getTarget(int index) {
+        return targets[index];
+    }
+
+    public int getLabelCount() {
+        return labelAddresses.length;
+    }
+
+    public int getLabelAddress(int label) {
+        return labelAddresses[label];
+    }
+
+    public String getLabelName(int label) {
+        return labelNames[label];
+    }
+
+    public void write(Path output) throws IOException {
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt(mnemonics.length).putInt(labelAddresses.length);
+            for (String mnemonic : mnemonics) {
+                buffer = putString(out, buffer, mnemonic);
+            }
+            for (int i = 0; i < labelAddresses.length; i++) {
+                buffer = reserve(out, buffer, 4);
+                buffer.putInt(labelAddresses[i]);
+                buffer = putString(out, buffer, labelNames[i]);
+            }
+            for (int i = 0; i < size; i++) {
+                buffer = reserve(out, buffer, RECORD_SIZE);
+                buffer.putInt(addresses[i]).putInt(immediates[i]).putInt(targets[i]).putShort(opcodes[i])
+                        .put(lengths[i]).put(rds[i]).put(rs1s[i]).put(rs2s[i]).putShort((short) 0);
+            }
+            drain(out, buffer);
+        }
+    }
+
+    public static InstructionTable read(Path input) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 20 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new AssertionError("Given file is not an instruction table.");
+            }
+            int count = buffer.getInt();
+            int mnemonicCount = buffer.getInt();
+            int labelCount = buffer.getInt();
+            if (count < 0 || mnemonicCount < 0 || labelCount < 0
+                    || buffer.remaining() < mnemonicCount * 2L + labelCount * 6L + (long) count * RECORD_SIZE) {
+                throw new AssertionError("Instruction table is truncated.");
+            }
+            String[] mnemonics = new String[mnemonicCount];
+            int[] labelAddresses = new int[labelCount];
+            String[] labelNames = new String[labelAddresses.length];
+            for (int i = 0; i < mnemonics.length; i++) {
+                mnemonics[i] = getString(buffer);
+            }
+            for (int i = 0; i < labelAddresses.length; i++) {
+                if (buffer.remaining() < 4) {
+                    throw new AssertionError("Instruction table is truncated.");
+                }
+                labelAddresses[i] = buffer.getInt();
+                labelNames[i] = getString(buffer);
+            }
+            if (buffer.remaining() < (long) count * RECORD_SIZE) {
+                throw new AssertionError("Instruction table is truncated.");
+            }
+            InstructionTable table = new InstructionTable(mnemonics, count);
+            table.setLabels(labelAddresses, labelNames);
+            for (int i = 0; i < count; i++) {
+                int address = buffer.getInt();
+                int immediate = buffer.getInt();
+                int target = buffer.getInt();
+                int opcode = buffer.getShort();
+                int length = buffer.get();
+                int rd = buffer.get();
+                int rs1 = buffer.get();
+                int rs2 = buffer.get();
+                buffer.getShort();
+                if (opcode < 0 || opcode >= mnemonics.length) {
+                    throw new AssertionError("Unknown opcode " + opcode + " in record " + i + " of the instruction table.");
+                }
+                table.add(address, length, opcode, rd, rs1, rs2, immediate, target);
+            }
+            return table;
+        }
+    }
+
+    private static ByteBuffer putString(FileChannel out, ByteBuffer buffer, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            bytes = Arrays.copyOf(bytes, 0xFFFF);
+        }
+        buffer = reserve(out, buffer, 2 + bytes.length);
+        return buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        if (buffer.remaining() < 2 || buffer.remaining() - 2 < (buffer.getShort(buffer.position()) & 0xFFFF)) {
+            throw new AssertionError("Instruction table is truncated.");
+        }
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer reserve(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        drain(out, buffer);
+        if (buffer.capacity() < bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return buffer;
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
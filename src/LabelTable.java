@@ -0,0 +1,79 @@
+public class LabelTable {
+    private int[] keys;
+    private String[] values;
+    private int size;
+
+    public LabelTable() {
+        this(64);
+    }
+
+    public LabelTable(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+        keys = new int[capacity];
+        values = new String[capacity];
+    }
+
+    public String get(int address) {
+        return values[find(address)];
+    }
+
+    public boolean containsKey(int address) {
+        return values[find(address)] != null;
+    }
+
+    public void put(int address, String label) {
+        int slot = find(address);
+        if (values[slot] == null) {
+            keys[slot] = address;
+            size++;
+        }
+        values[slot] = label;
+        if (size * 2 > keys.length) {
+            resize();
+        }
+    }
+
+    public void merge(int address, String label) {
+        String old = get(address);
+        put(address, old == null ? label : old.concat(label));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] addresses() {
+        int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                result[count++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    private int find(int address) {
+        int mask = keys.length - 1;
+        int hash = address * 0x9E3779B9;
+        int slot = (hash ^ hash >>> 16) & mask;
+        while (values[slot] != null && keys[slot] != address) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        int[] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new String[oldValues.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -1,37 +1,685 @@
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class Main {
+    private static final int READ_AHEAD = 4;
+
+    private static final String USAGE = "Usage: Main [--mmap] [--parallel] [--pipeline] [--metrics] [--annotate]"
+            + " [--cache DIR [--cache-size N]] <input> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] (--symbol NAME | --range FROM:TO) <input> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] --records [--incremental <old-input> <old-records>] <input> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] --diff <old-input> <input> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] --cfg <input> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] --xrefs <input> <output>"
+            + System.lineSeparator()
+            + "       Main --callers <address|symbol> <input> <xrefs>"
+            + System.lineSeparator()
+            + "       Main [--mmap] --symbolize <input> <addresses> <output>"
+            + System.lineSeparator()
+            + "       Main [--mmap] [--jobs N] --serve <socket>"
+            + System.lineSeparator()
+            + "       Main --batch [--jobs N] [--mmap] [--parallel] [--pipeline] [--metrics] [--annotate]"
+            + " [--cache DIR [--cache-size N]] <output-dir> <file|dir|glob|@list>...";
+
     public static void main(String[] args) {
-        if (args.length != 2) {
+        boolean mapped = false;
+        boolean parallel = false;
+        boolean pipelined = false;
+        boolean batch = false;
+        boolean records = false;
+        String[] previous = null;
+        boolean diff = false;
+        boolean summary = false;
+        boolean annotated = false;
+        boolean graph = false;
+        boolean xrefs = false;
+        String callers = null;
+        boolean symbolize = false;
+        String socket = null;
+        String symbol = null;
+        String range = null;
+        String cacheName = null;
+        long cacheSize = 1L << 30;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--mmap")) {
+                mapped = true;
+            } else if (args[i].equals("--parallel")) {
+                parallel = true;
+            } else if (args[i].equals("--pipeline")) {
+                pipelined = true;
+            } else if (args[i].equals("--records")) {
+                records = true;
+            } else if (args[i].equals("--incremental") && i + 2 < args.length) {
+                previous = new String[]{args[i + 1], args[i + 2]};
+                i += 2;
+            } else if (args[i].equals("--metrics")) {
+                summary = true;
+            } else if (args[i].equals("--annotate")) {
+                annotated = true;
+            } else if (args[i].equals("--xrefs")) {
+                xrefs = true;
+            } else if (args[i].equals("--callers") && i + 1 < args.length) {
+                callers = args[++i];
+            } else if (args[i].equals("--serve") && i + 1 < args.length) {
+                socket = args[++i];
+            } else if (args[i].equals("--symbolize")) {
+                symbolize = true;
+            } else if (args[i].equals("--cfg")) {
+                graph = true;
+            } else if (args[i].equals("--diff")) {
+                diff = true;
+            } else if (args[i].equals("--batch")) {
+                batch = true;
+            } else if (args[i].equals("--symbol") && i + 1 < args.length) {
+                symbol = args[++i];
+            } else if (args[i].equals("--range") && i + 1 < args.length) {
+                range = args[++i];
+            } else if (args[i].equals("--cache") && i + 1 < args.length) {
+                cacheName = args[++i];
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheSize = parseSize(args[++i]);
+                if (cacheSize < 0) {
+                    System.out.println("Please, insert the cache size as a number with an optional k, m or g suffix.");
+                    System.out.println(USAGE);
+                    return;
+                }
+            } else if (args[i].equals("--jobs") && i + 1 < args.length) {
+                jobs = parseCount(args[++i]);
+                if (jobs < 1) {
+                    System.out.println("Please, insert a positive number of jobs.");
+                    System.out.println(USAGE);
+                    return;
+                }
+            } else {
+                files.add(args[i]);
+            }
+        }
+        DisassemblyCache cache = null;
+        if (cacheName != null) {
+            try {
+                cache = new DisassemblyCache(FileSystems.getDefault().getPath(cacheName), cacheSize);
+            } catch (IOException e) {
+                System.out.println("Can't open cache " + cacheName + ": " + e.getMessage());
+                return;
+            }
+        }
+        if (socket != null) {
+            try {
+                new DisassemblyServer(FileSystems.getDefault().getPath(socket), jobs, mapped).serve();
+            } catch (IOException e) {
+                System.out.println("Can't listen on " + socket + ": " + e.getMessage());
+            }
+            return;
+        }
+        if (batch) {
+            if (files.size() < 2) {
+                System.out.println("Please, insert name of the output directory and the input files.");
+                System.out.println(USAGE);
+                return;
+            }
+            batch(files.get(0), files.subList(1, files.size()), jobs, mapped, parallel, pipelined, cache, summary,
+                    annotated);
+            return;
+        }
+        if (symbolize) {
+            if (files.size() != 3) {
+                System.out.println("Please, insert names of the input file, the address list and the output file.");
+                System.out.println(USAGE);
+                return;
+            }
+            String error = symbolize(FileSystems.getDefault().getPath(files.get(0)),
+                    FileSystems.getDefault().getPath(files.get(1)), FileSystems.getDefault().getPath(files.get(2)), mapped);
+            if (error != null) {
+                System.out.println(error);
+            }
+            return;
+        }
+        if (diff) {
+            if (files.size() != 3) {
+                System.out.println("Please, insert names of the two input files and the output file.");
+                System.out.println(USAGE);
+                return;
+            }
+            String error = diff(FileSystems.getDefault().getPath(files.get(0)),
+                    FileSystems.getDefault().getPath(files.get(1)), FileSystems.getDefault().getPath(files.get(2)), mapped);
+            if (error != null) {
+                System.out.println(error);
+            }
+            return;
+        }
+        if (files.size() != 2) {
             System.out.println("Please, insert names of the input/output files.");
+            System.out.println(USAGE);
             System.exit(0);
         }
+        Path input = FileSystems.getDefault().getPath(files.get(0));
+        Path output = FileSystems.getDefault().getPath(files.get(1));
+        String error;
+        if (callers != null) {
+            error = printCallers(input, output, callers);
+        } else if (xrefs) {
+            error = writeXrefs(input, output, mapped);
+        } else if (graph) {
+            error = writeGraph(input, output, mapped);
+        } else if (records) {
+            error = writeRecords(input, output, mapped, previous);
+        } else if (symbol != null || range != null) {
+            error = disassembleRange(input, output, mapped, symbol, range);
+        } else {
+            error = disassemble(input, output, mapped, parallel, pipelined, cache, summary, annotated);
+        }
+        if (error != null) {
+            System.out.println(error);
+        }
+    }
+
+    private static String disassemble(Path input, Path output, boolean mapped, boolean parallel,
+                                      boolean pipelined, DisassemblyCache cache, boolean summary,
+                                      boolean annotated) {
+        Metrics metrics = new Metrics(summary);
+        FutureTask<Void> reader = null;
+        try (ELFParser source = new ELFParser(input, mapped || pipelined)) {
+            String key = null;
+            if (cache != null) {
+                key = DisassemblyCache.key(source, annotated);
+                Metrics.Phase phase = metrics.begin("cache");
+                try {
+                    if (cache.load(key, output)) {
+                        phase.end(Files.size(output));
+                        return summary ? writeMetrics(metrics, input, output) : null;
+                    }
+                } catch (IOException e) {
+                    return "Can't write in a file " + output + ": " + e.getMessage();
+                }
+            }
+            Metrics.Phase phase = metrics.begin("header");
+            source.parseHeader();
+            phase.end(0);
+            ByteBuffer text = null;
+            RISCV2Assembler[] sections = null;
+            BlockingQueue<Integer> loaded = new ArrayBlockingQueue<>(READ_AHEAD);
+            if (pipelined && source.getCodeSectionCount() == 1) {
+                ByteBuffer target = source.allocateText();
+                reader = new FutureTask<>(() -> {
+                    try {
+                        source.readText(target, loaded);
+                    } catch (Throwable e) {
+                        loaded.put(-1);
+                        throw e;
+                    }
+                    return null;
+                });
+                Thread thread = new Thread(reader, "text-reader");
+                thread.setDaemon(true);
+                thread.start();
+                text = target;
+            }
+            phase = metrics.begin("symtab");
+            source.parseSymTable();
+            phase.end(source.getSymTableSize());
+            SymbolIndex symbols = annotated ? SymbolIndex.build(source) : null;
+            if (source.getCodeSectionCount() > 1) {
+                phase = metrics.begin("data");
+                sections = RISCV2Assembler.sections(source);
+                long size = 0;
+                for (int k = 0; k < sections.length; k++) {
+                    sections[k].setMetrics(metrics);
+                    sections[k].setSymbols(symbols);
+                    size += source.getCodeSectionSize(k);
+                }
+                phase.end(size);
+            } else if (reader == null) {
+                phase = metrics.begin("data");
+                text = source.parseData();
+                phase.end(text.limit());
+            }
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(output.toFile()))) {
+                if (sections != null) {
+                    boolean many = parallel || sections.length >= RISCV2Assembler.PARALLEL_SECTIONS;
+                    RISCV2Assembler.convert(out, sections, many ? ForkJoinPool.commonPool() : null);
+                } else {
+                    out.write(source.getCodeSectionName(0));
+                    out.write(System.lineSeparator());
+                    RISCV2Assembler assembler = new RISCV2Assembler(text, source);
+                    assembler.setMetrics(metrics);
+                    assembler.setSymbols(symbols);
+                    if (pipelined) {
+                        try {
+                            assembler.convert(out, loaded, parallel ? ForkJoinPool.commonPool() : null);
+                        } finally {
+                            join(reader);
+                        }
+                    } else if (parallel) {
+                        assembler.convert(out, ForkJoinPool.commonPool());
+                    } else {
+                        assembler.convert(out);
+                    }
+                }
+                phase = metrics.begin("write");
+                writeSymtab(out, source);
+                out.flush();
+                phase.end(source.getSymTableSize());
+            } catch (IOException e) {
+                return "Can't write in a file " + output + ": " + e.getMessage();
+            }
+            if (summary) {
+                String error = writeMetrics(metrics, input, output);
+                if (error != null) {
+                    return error;
+                }
+            }
+            if (cache != null) {
+                try {
+                    cache.store(key, output);
+                } catch (IOException e) {
+                    return "Can't store " + output + " in the cache: " + e.getMessage();
+                }
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        } catch (UncheckedIOException e) {
+            return "Can't read from file " + input + ": " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Interrupted while disassembling " + input;
+        } finally {
+            if (reader != null) {
+                reader.cancel(true);
+            }
+        }
+        return null;
+    }
+
+    private static void join(FutureTask<Void> reader) throws InterruptedException {
         try {
-            ELFParser source = new ELFParser(FileSystems.getDefault().getPath(args[0]));
-            List<String> codes = source.parseELF();
-            StringBuilder result = new RISCV2Assembler(codes, source).convert();
-            try (BufferedWriter out = new BufferedWriter(new FileWriter(new File(args[1])))) {
-                out.write(".text");
-                out.write(System.lineSeparator());
-                out.write(result.toString());
-                out.write(System.lineSeparator());
-                out.write(".symtab");
-                out.write(System.lineSeparator());
-                out.write(String.format("%s %-15s %7s %-8s %-8s %-8s %6s %s\n",
-                        "Symbol", "Value", "Size", "Type", "Bind", "Vis", "Index", "Name"));
-                out.write(source.getAllLocs());
+            reader.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AssertionError) {
+                throw (AssertionError) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw new UncheckedIOException((IOException) e.getCause());
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    static void writeSymtab(Writer out, ELFParser source) throws IOException {
+        out.write(System.lineSeparator());
+        out.write(".symtab");
+        out.write(System.lineSeparator());
+        out.write(String.format("%s %-15s %7s %-8s %-8s %-8s %6s %s\n",
+                "Symbol", "Value", "Size", "Type", "Bind", "Vis", "Index", "Name"));
+        source.writeAllLocs(out);
+    }
+
+    private static String diff(Path oldInput, Path input, Path output, boolean mapped) {
+        Path current = oldInput;
+        try (ELFParser oldSource = new ELFParser(oldInput, mapped)) {
+            ByteBuffer oldText = oldSource.parseELF();
+            current = input;
+            try (ELFParser source = new ELFParser(input, mapped)) {
+                ByteBuffer text = source.parseELF();
+                try (BufferedWriter out = new BufferedWriter(new FileWriter(output.toFile()))) {
+                    new ELFDiff(oldSource, oldText, source, text).write(out, ForkJoinPool.commonPool());
+                } catch (IOException e) {
+                    return "Can't write in a file " + output + ": " + e.getMessage();
+                }
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input " + current + ": " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + current + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + current + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String writeXrefs(Path input, Path output, boolean mapped) {
+        try (ELFParser source = new ELFParser(input, mapped)) {
+            source.parseELF();
+            InstructionTable table = RISCV2Assembler.decodeTable(RISCV2Assembler.sections(source));
+            try {
+                XrefIndex.build(table).write(output);
+            } catch (IOException e) {
+                return "Can't write in a file " + output + ": " + e.getMessage();
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String printCallers(Path input, Path indexFile, String query) {
+        try (ELFParser source = new ELFParser(input)) {
+            source.parseText();
+            long from;
+            long to;
+            int symbol = source.findSymbol(query);
+            if (symbol >= 0) {
+                from = source.getSymbolValue(symbol);
+                to = Math.max(source.getSymbolEnd(symbol), from + 1);
+            } else {
+                try {
+                    from = Long.decode(query);
+                    to = from + 1;
+                } catch (NumberFormatException e) {
+                    return "No symbol " + query + " in " + input;
+                }
+            }
+            XrefIndex index;
+            try {
+                index = XrefIndex.read(indexFile);
+            } catch (IOException e) {
+                return "Can't read from file " + indexFile + ": " + e.getMessage();
+            }
+            SymbolIndex symbols = SymbolIndex.build(source);
+            for (int k = index.first((int) from); k < index.last((int) to - 1); k++) {
+                String where = symbols.symbolize(index.getSource(k));
+                System.out.printf("%08x %-7s -> %08x%s%n", index.getSource(k),
+                        XrefIndex.getKindName(index.getKind(k)), index.getTarget(k), where == null ? "" : "  " + where);
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String symbolize(Path input, Path addresses, Path output, boolean mapped) {
+        try (ELFParser source = new ELFParser(input, mapped)) {
+            source.parseText();
+            SymbolIndex symbols = SymbolIndex.build(source);
+            int[] values = new int[1024];
+            int count = 0;
+            try (BufferedReader in = Files.newBufferedReader(addresses)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    line = line.trim();
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, count * 2);
+                    }
+                    try {
+                        values[count++] = (int) Long.parseLong(line.startsWith("0x") ? line.substring(2) : line, 16);
+                    } catch (NumberFormatException e) {
+                        return "Incorrect address " + line + " in " + addresses;
+                    }
+                }
+            } catch (IOException e) {
+                return "Can't read from file " + addresses + ": " + e.getMessage();
+            }
+            String[] names = symbols.symbolize(Arrays.copyOf(values, count));
+            try (BufferedWriter out = Files.newBufferedWriter(output)) {
+                StringBuilder line = new StringBuilder();
+                for (int k = 0; k < count; k++) {
+                    line.setLength(0);
+                    String hex = Integer.toHexString(values[k]);
+                    for (int pad = hex.length(); pad < 8; pad++) {
+                        line.append('0');
+                    }
+                    line.append(hex).append(' ').append(names[k] == null ? "??" : names[k]).append('\n');
+                    out.write(line.toString());
+                }
+            } catch (IOException e) {
+                return "Can't write in a file " + output + ": " + e.getMessage();
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String writeGraph(Path input, Path output, boolean mapped) {
+        try (ELFParser source = new ELFParser(input, mapped)) {
+            source.parseELF();
+            InstructionTable table = RISCV2Assembler.decodeTable(RISCV2Assembler.sections(source));
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(output.toFile()))) {
+                ControlFlowGraph.build(table, source).write(out);
+            } catch (IOException e) {
+                return "Can't write in a file " + output + ": " + e.getMessage();
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String writeRecords(Path input, Path output, boolean mapped, String[] previous) {
+        try (ELFParser source = new ELFParser(input, mapped)) {
+            source.parseELF();
+            InstructionTable table;
+            if (previous == null) {
+                table = RISCV2Assembler.decodeTable(RISCV2Assembler.sections(source));
+            } else {
+                Path oldInput = FileSystems.getDefault().getPath(previous[0]);
+                try (ELFParser oldSource = new ELFParser(oldInput, mapped)) {
+                    oldSource.parseELF();
+                    InstructionTable oldTable = InstructionTable.read(FileSystems.getDefault().getPath(previous[1]));
+                    table = RISCV2Assembler.decodeTable(RISCV2Assembler.sections(source), oldSource, oldTable);
+                }
+            }
+            try {
+                table.write(output);
             } catch (IOException e) {
-                System.out.println("Can't write in a file " + args[1] + ": " + e.getMessage());
+                return "Can't write in a file " + output + ": " + e.getMessage();
             }
         } catch (AssertionError e) {
-            System.out.println("Incorrect input: " + e.getMessage());
-            System.out.println(e.getMessage());
+            return "Incorrect input: " + e.getMessage();
         } catch (FileNotFoundException e) {
-            System.out.println("No such file " + args[0] + ": " + e.getMessage());
+            return "No such file " + input + ": " + e.getMessage();
         } catch (IOException e) {
-            System.out.println("Can't read from file " + args[0] + ": " + e.getMessage());
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static String disassembleRange(Path input, Path output, boolean mapped, String symbol, String range) {
+        try (ELFParser source = new ELFParser(input, mapped)) {
+            source.parseText();
+            RISCV2Assembler[] sections = RISCV2Assembler.sections(source);
+            long from;
+            long to;
+            if (symbol != null) {
+                int index = source.findSymbol(symbol);
+                if (index < 0) {
+                    return "No symbol " + symbol + " in " + input;
+                }
+                from = source.getSymbolValue(index);
+                to = source.getSymbolEnd(index);
+            } else {
+                int separator = range.indexOf(':');
+                if (separator < 0) {
+                    return "Incorrect range " + range + ", expected FROM:TO";
+                }
+                try {
+                    from = Long.decode(range.substring(0, separator));
+                    to = Long.decode(range.substring(separator + 1));
+                } catch (NumberFormatException e) {
+                    return "Incorrect range " + range + ", expected FROM:TO";
+                }
+            }
+            try (BufferedWriter out = new BufferedWriter(new FileWriter(output.toFile()))) {
+                RISCV2Assembler.convert(out, sections, from, to);
+            } catch (IOException e) {
+                return "Can't write in a file " + output + ": " + e.getMessage();
+            }
+        } catch (AssertionError e) {
+            return "Incorrect input: " + e.getMessage();
+        } catch (FileNotFoundException e) {
+            return "No such file " + input + ": " + e.getMessage();
+        } catch (IOException e) {
+            return "Can't read from file " + input + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static void batch(String outputName, List<String> inputNames, int jobs, boolean mapped, boolean parallel,
+                              boolean pipelined, DisassemblyCache cache, boolean summary, boolean annotated) {
+        Path outputDir = FileSystems.getDefault().getPath(outputName);
+        Map<Path, Path> unique = new LinkedHashMap<>();
+        try {
+            Files.createDirectories(outputDir);
+            for (String name : inputNames) {
+                for (Path input : expand(name)) {
+                    unique.putIfAbsent(input.toAbsolutePath().normalize(), input);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Can't collect input files: " + e.getMessage());
+            return;
+        }
+        List<Path> inputs = new ArrayList<>(unique.values());
+
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, jobs));
+        List<Future<String>> results = new ArrayList<>();
+        Set<String> outputs = new HashSet<>();
+        for (Path input : inputs) {
+            String outputFile = input.getFileName() + ".txt";
+            for (int copy = 1; !outputs.add(outputFile); copy++) {
+                outputFile = input.getFileName() + "-" + copy + ".txt";
+            }
+            Path output = outputDir.resolve(outputFile);
+            results.add(workers.submit(() -> disassemble(input, output, mapped, parallel, pipelined, cache, summary,
+                    annotated)));
+        }
+        workers.shutdown();
+
+        int failed = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            String error;
+            try {
+                error = results.get(i).get();
+            } catch (ExecutionException e) {
+                error = "Failed to disassemble " + inputs.get(i) + ": " + e.getCause();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "Interrupted while disassembling " + inputs.get(i);
+            }
+            if (error == null) {
+                System.out.println(inputs.get(i) + ": ok");
+            } else {
+                System.out.println(inputs.get(i) + ": " + error);
+                failed++;
+            }
+        }
+        System.out.println("Disassembled " + (inputs.size() - failed) + " of " + inputs.size() + " files.");
+    }
+
+    private static String writeMetrics(Metrics metrics, Path input, Path output) {
+        Path report = output.resolveSibling(output.getFileName() + ".metrics.json");
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(report.toFile()))) {
+            metrics.writeSummary(out, input.toString());
+        } catch (IOException e) {
+            return "Can't write in a file " + report + ": " + e.getMessage();
+        }
+        return null;
+    }
+
+    private static List<Path> expand(String name) throws IOException {
+        if (name.startsWith("@")) {
+            try (Stream<String> lines = Files.lines(FileSystems.getDefault().getPath(name.substring(1)))) {
+                return lines.map(String::trim).filter(line -> !line.isEmpty())
+                        .map(line -> FileSystems.getDefault().getPath(line)).collect(Collectors.toList());
+            }
+        }
+        int glob = indexOfGlob(name);
+        if (glob >= 0) {
+            int separator = Math.max(name.lastIndexOf('/', glob), name.lastIndexOf(File.separatorChar, glob));
+            Path base = FileSystems.getDefault().getPath(separator < 0 ? "." : name.substring(0, separator + 1));
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + name.substring(separator + 1));
+            try (Stream<Path> paths = Files.walk(base)) {
+                return paths.filter(Files::isRegularFile).filter(path -> matcher.matches(base.relativize(path)))
+                        .sorted().collect(Collectors.toList());
+            }
+        }
+        Path path = FileSystems.getDefault().getPath(name);
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> paths = Files.list(path)) {
+                return paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+        }
+        return List.of(path);
+    }
+
+    private static long parseSize(String size) {
+        if (size.isEmpty()) {
+            return -1;
+        }
+        char suffix = Character.toLowerCase(size.charAt(size.length() - 1));
+        int shift = suffix == 'k' ? 10 : suffix == 'm' ? 20 : suffix == 'g' ? 30 : 0;
+        try {
+            long value = Long.parseLong(shift == 0 ? size : size.substring(0, size.length() - 1));
+            return value < 0 || value > Long.MAX_VALUE >> shift ? -1 : value << shift;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int parseCount(String count) {
+        try {
+            return Integer.parseInt(count);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static int indexOfGlob(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if ("*?[{".indexOf(name.charAt(i)) >= 0) {
+                return i;
+            }
         }
+        return -1;
     }
 }
@@ -0,0 +1,178 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+public class Metrics {
+    public static final int R = 0;
+    public static final int I = 1;
+    public static final int S = 2;
+    public static final int SB = 3;
+    public static final int U = 4;
+    public static final int J = 5;
+    public static final int CSR = 6;
+    public static final int RVC = 7;
+    public static final int UNKNOWN = 8;
+
+    private static final String[] formats = {"R", "I", "S", "SB", "U", "J", "CSR", "RVC", "unknown"};
+
+    private static final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final boolean detailed;
+    private final List<String> names = new ArrayList<>();
+    private final List<long[]> values = new ArrayList<>();
+    private long[] mix;
+
+    public Metrics(boolean detailed) {
+        this.detailed = detailed;
+    }
+
+    public Phase begin(String name) {
+        return new Phase(name);
+    }
+
+    public boolean wantsMix() {
+        return detailed || EventType.getEventType(MixEvent.class).isEnabled();
+    }
+
+    public void mix(long[] counts) {
+        mix = counts;
+        MixEvent event = new MixEvent();
+        if (event.isEnabled()) {
+            event.r = counts[R];
+            event.i = counts[I];
+            event.s = counts[S];
+            event.sb = counts[SB];
+            event.u = counts[U];
+            event.j = counts[J];
+            event.csr = counts[CSR];
+            event.rvc = counts[RVC];
+            event.unknown = counts[UNKNOWN];
+            event.commit();
+        }
+    }
+
+    public void writeSummary(Writer out, String input) throws IOException {
+        StringBuilder result = new StringBuilder();
+        result.append("{\n  \"input\": \"").append(escape(input)).append("\",\n  \"phases\": [");
+        for (int k = 0; k < names.size(); k++) {
+            long[] value = values.get(k);
+            result.append(k == 0 ? "\n" : ",\n").append(String.format(Locale.ROOT,
+                    "    {\"name\": \"%s\", \"ms\": %.3f, \"bytes\": %d, \"bytesPerSecond\": %.0f, \"allocatedBytes\": %d}",
+                    names.get(k), value[0] / 1e6, value[1], value[0] == 0 ? 0.0 : value[1] * 1e9 / value[0], value[2]));
+        }
+        result.append("\n  ]");
+        if (mix != null) {
+            long total = 0;
+            result.append(",\n  \"formats\": {");
+            for (int k = 0; k < formats.length; k++) {
+                result.append(k == 0 ? "" : ", ").append('"').append(formats[k]).append("\": ").append(mix[k]);
+                total += mix[k];
+            }
+            result.append("},\n  \"instructions\": ").append(total);
+            result.append(",\n  \"unknown\": ").append(mix[UNKNOWN]);
+        }
+        result.append("\n}\n");
+        out.write(result.toString());
+    }
+
+    private static String escape(String value) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    public class Phase {
+        private final String name;
+        private final PhaseEvent event = new PhaseEvent();
+        private final long start;
+        private final long allocated;
+
+        private Phase(String name) {
+            this.name = name;
+            this.allocated = detailed ? threads.getThreadAllocatedBytes(Thread.currentThread().getId()) : 0;
+            this.start = detailed ? System.nanoTime() : 0;
+            event.begin();
+        }
+
+        public void end(long bytes) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = name;
+                event.bytes = bytes;
+                event.commit();
+            }
+            if (detailed) {
+                long elapsed = System.nanoTime() - start;
+                long allocation = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+                synchronized (Metrics.this) {
+                    names.add(name);
+                    values.add(new long[]{elapsed, bytes, allocation});
+                }
+            }
+        }
+    }
+
+    @Name("disassembler.Phase")
+    @Label("Disassembler Phase")
+    @Category("Disassembler")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("disassembler.InstructionMix")
+    @Label("Instruction Mix")
+    @Category("Disassembler")
+    static class MixEvent extends Event {
+        @Label("R")
+        long r;
+
+        @Label("I")
+        long i;
+
+        @Label("S")
+        long s;
+
+        @Label("SB")
+        long sb;
+
+        @Label("U")
+        long u;
+
+        @Label("J")
+        long j;
+
+        @Label("CSR")
+        long csr;
+
+        @Label("RVC")
+        long rvc;
+
+        @Label("Unknown")
+        long unknown;
+    }
+}
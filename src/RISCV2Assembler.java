@@ -1,15 +1,43 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class RISCV2Assembler {
-    private final List<String> codes;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int CHUNK_SIZE = 1 << 16;
+    private static final int PIPELINE_DEPTH = 8;
+    public static final int PARALLEL_SECTIONS = 16;
+    private static final int LABEL_WIDTH = 10;
+    private static final char[] PADDING = "          ".toCharArray();
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final ByteBuffer text;
+    private final long textAddress;
+    private final String name;
     private final ELFParser source;
-    private int address;
+    private final boolean wide;
+    private final String[] loads;
+    private final String[] stores;
+    private final long[] compressed;
+    private Metrics metrics = new Metrics(false);
+    private SymbolIndex symbols;
 
-    private final HashMap<String, String> systemRegisters = new HashMap<>();
+    private static final String[] systemRegisters = new String[4096];
 
-    private final String[] registers = {
+    private static final String[] registers = {
             "zero", "ra", "sp",
             "gp", "tp", "t0",
             "t1", "t2", "s0",
@@ -23,793 +51,1463 @@ public class RISCV2Assembler {
             "t5", "t6"
     };
 
-    private final HashMap<String, String> cRegisters = new HashMap<>(Map.of(
-            "000", "s0",
-            "001", "s1",
-            "010", "a0",
-            "011", "a1",
-            "100", "a2",
-            "101", "a3",
-            "110", "a4",
-            "111", "a5"
-    ));
-
-    private final HashMap<String, String> rCommands = new HashMap<>(Map.of(
-            "0000000000", "ADD",
-            "0000000001", "SLL",
-            "0000000010", "SLT",
-            "0000000011", "SLTU",
-            "0000000100", "XOR",
-            "0000000101", "SRL",
-            "0000000110", "OR",
-            "0000000111", "AND",
-            "0100000000", "SUB",
-            "0100000101", "SRA"
-    ));
-
-    private final HashMap<String, String> iCommands = new HashMap<>(Map.of(
-            "000", "ADDI",
-            "010", "SLTI",
-            "011", "SLTIU",
-            "100", "XORI",
-            "110", "ORI",
-            "111", "ANDI"
-    ));
-
-    private final HashMap<String, String> loadCommands = new HashMap<>(Map.of(
-            "000", "LB",
-            "001", "LH",
-            "010", "LW",
-            "100", "LBU",
-            "101", "LHU"
-    ));
-
-    private final HashMap<String, String> sCommands = new HashMap<>(Map.of(
-            "000", "SB",
-            "001", "SH",
-            "010", "SW"
-    ));
-
-    private final HashMap<String, String> sbCommands = new HashMap<>(Map.of(
-            "000", "BEQ",
-            "001", "BNE",
-            "100", "BLT",
-            "101", "BGE",
-            "110", "BLTU",
-            "111", "BGEU"
-    ));
-
-    private final HashMap<String, String> q0Commands = new HashMap<>(Map.of(
-            "000", "C.ADDI4SPN",
-            "001", "C.FLD",
-            "010", "C.LW",
-            "011", "C.FLW",
-            "101", "C.FSD",
-            "110", "C.SW",
-            "111", "C.FSW"
-    ));
-
-    private void fillHashMaps() {
-        rCommands.putAll(Map.of(
-                "0000001000", "MUL",
-                "0000001100", "DIV",
-                "0000001001", "MULH",
-                "0000001011", "MULHU",
-                "0000001010", "MULHSU",
-                "0000001111", "REMU",
-                "0000001101", "DIVU",
-                "0000001110", "REM"
-        ));
-        systemRegisters.putAll(Map.of(
-                "000000000001", "fflags", "000000000010", "frm", "000000000011", "fcsr",
-                "110000000000", "cycle", "110000000001", "time", "110000000010", "instret",
-                "110010000000", "cycleh", "110010000001", "timeh", "110010000010", "instreth",
-                "011110110011", "dscratch1"));
-        systemRegisters.putAll(Map.of(
-                "000100000000", "sstatus", "000100000100", "sie", "000100000101", "stvec",
-                "000100000110", "scounteren", "000100001010", "senvcfg",
-                "000101000000", "sscratch", "000101000001", "sepc", "000101000010", "scause",
-                "000101000011", "stval", "011110110010", "dscratch0"));
-        systemRegisters.putAll(Map.of("000101000100", "sip", "000110000000", "satp",
-                "010110101000", "scontext", "011000000000", "hstatus", "011000000010", "hedeleg",
-                "011000000011", "hidelef", "011000000100", "hie", "011000000110", "hcounteren",
-                "011000000111", "hgeie", "011001000011", "htval"));
-        systemRegisters.putAll(Map.of("011001000100", "hip",
-                "011001000101", "hvip", "011001001010", "htinst", "111000010010", "hgeip",
-                "011000001010", "henvcfg", "011000011010", "henvcfgh", "011010000000", "hgatp",
-                "011010101000", "hcontext", "011000000101", "htimedelta",
-                "011000010101", "htimedeltah"));
-        systemRegisters.putAll(Map.of("001000000000", "vsstatus",
-                "001000000100", "vsie", "001000000101", "vstvec", "001001000000", "vsscratch",
-                "001001000001", "vsepc", "001001000010", "vscause", "001001000011", "vstval",
-                "001001000100", "vsip", "001010000000", "vsatp",
-                "111100010001", "mvendorid"));
-        systemRegisters.putAll(Map.of("111100010010", "marchid", "111100010011", "mimpid",
-                "111100010100", "mhartid", "111100010101", "mconfigptr",
-                "001100000000", "mstatus", "001100000001", "misa", "001100000010", "medeleg",
-                "001100000011", "mideleg", "001100000100", "mie", "001100000101", "mtvec"));
-        systemRegisters.putAll(Map.of("001100000110", "mcounteren",
-                "001100010000", "mstatush", "001101000000", "mscratch", "001101000001", "mepc",
-                "001101000010", "mcause", "001101000011", "mtval", "001101000100", "mip",
-                "001101001010", "mtinst", "001101001011", "mtval2", "001100001010", "menvcfg"));
-        systemRegisters.putAll(Map.of("001100011010", "menvcfgh", "011101000111", "mseccfg",
-                "011101010111", "mseccfgh", "101100000000", "mcycle", "101100000010", "minstret",
-                "101110000000", "mcycleh", "101110000010", "minstreth"));
-        systemRegisters.putAll(Map.of("001100100000", "mcountinhibit", "011110100000","tselect",
-                "011110100001", "tdata1", "011110100010", "tdata2", "011110100011", "tdata3",
-                "011110101000", "mcontext", "011110110000", "dcsr", "011110110001", "dpc"));
-
-        int temp = 12 * 256 + 3;
-        for (int i = 0; i < 29; i++) {
-            systemRegisters.put(source.toBin(temp + i), "hpmcounter" + (i + 3));
-        }
+    private static final String[] rCommands = new String[1024];
+
+    private static final String[] wCommands = new String[1024];
+
+    private static final String[] iCommands = {
+            "ADDI", null, "SLTI", "SLTIU", "XORI", null, "ORI", "ANDI"
+    };
+
+    private static final String[] loadCommands = {
+            "LB", "LH", "LW", null, "LBU", "LHU", null, null
+    };
+
+    private static final String[] sCommands = {
+            "SB", "SH", "SW", null, null, null, null, null
+    };
+
+    private static final String[] loadCommands64 = {
+            "LB", "LH", "LW", "LD", "LBU", "LHU", "LWU", null
+    };
+
+    private static final String[] sCommands64 = {
+            "SB", "SH", "SW", "SD", null, null, null, null
+    };
+
+    private static final String[] sbCommands = {
+            "BEQ", "BNE", null, null, "BLT", "BGE", "BLTU", "BGEU"
+    };
+
+    private static final String[] q0Commands = {
+            "C.ADDI4SPN", "C.FLD", "C.LW", "C.FLW", null, "C.FSD", "C.SW", "C.FSW"
+    };
+
+    private static final String[] q1ArithCommands = {
+            "C.SUB", "C.XOR", "C.OR", "C.AND", "C.SUBW", "C.ADDW", null, null
+    };
+
+    private static final String[] csrCommands = {
+            null, "CSRRW", "CSRRS", "CSRRC", "", "CSRRWI", "CSRRSI", "CSRRCI"
+    };
+
+    private static final String[] cImmediates = new String[64];
+
+    private static final String[] cCommands = {
+            "unknown_command", "C.ADDI4SPN", "C.FLD", "C.LW", "C.FLW", "C.FSD", "C.SW", "C.FSW",
+            "C.NOP", "C.ADDI", "C.JAL", "C.LI", "C.ADDI16SP", "C.LUI", "C.SRLI64", "C.SRAI64",
+            "C.ANDI", "C.SUB", "C.XOR", "C.OR", "C.AND", "C.SUBW", "C.ADDW", "C.J",
+            "C.BEQZ", "C.BNEZ", "C.SLLI64", "C.SLLI", "C.FLDSP", "C.LWSP", "C.FLWSP", "C.JR",
+            "C.MV", "C.EBREAK", "C.JALR", "C.ADD", "C.FSDSP", "C.SWSP", "C.FSWSP", "C.LD",
+            "C.SD", "C.ADDIW", "C.SRLI", "C.SRAI", "C.LDSP", "C.SDSP"
+    };
+
+    private static final int NONE = 0;
+    private static final int IMMEDIATE = 1;
+    private static final int REGISTER = 2;
+    private static final int REGISTER_IMMEDIATE = 3;
+    private static final int REGISTER_BINARY = 4;
+    private static final int TWO_REGISTERS = 5;
+    private static final int TWO_REGISTERS_IMMEDIATE = 6;
+    private static final int LOAD_STORE = 7;
+    private static final int JUMP = 8;
+    private static final int BRANCH = 9;
+    private static final int REGISTER_OFFSET = 10;
+
+    private static final long[] compressedTable = new long[1 << 16];
+    private static final long[] compressedTable64 = new long[1 << 16];
+
+    private static final Map<String, Integer> mnemonicIds = new LinkedHashMap<>();
+    private static final int[] compressedIds = new int[cCommands.length];
+    private static final int[] compressedRoles = new int[cCommands.length];
+    private static boolean[] jumpIds;
+
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int RA = 3;
+    private static final int SP = 4;
+
+    static {
+        fillTables();
+    }
+
+    private static void fillTables() {
+        rCommands[0b0000000_000] = "ADD";
+        rCommands[0b0000000_001] = "SLL";
+        rCommands[0b0000000_010] = "SLT";
+        rCommands[0b0000000_011] = "SLTU";
+        rCommands[0b0000000_100] = "XOR";
+        rCommands[0b0000000_101] = "SRL";
+        rCommands[0b0000000_110] = "OR";
+        rCommands[0b0000000_111] = "AND";
+        rCommands[0b0100000_000] = "SUB";
+        rCommands[0b0100000_101] = "SRA";
+        rCommands[0b0000001_000] = "MUL";
+        rCommands[0b0000001_001] = "MULH";
+        rCommands[0b0000001_010] = "MULHSU";
+        rCommands[0b0000001_011] = "MULHU";
+        rCommands[0b0000001_100] = "DIV";
+        rCommands[0b0000001_101] = "DIVU";
+        rCommands[0b0000001_110] = "REM";
+        rCommands[0b0000001_111] = "REMU";
+
+        wCommands[0b0000000_000] = "ADDW";
+        wCommands[0b0100000_000] = "SUBW";
+        wCommands[0b0000000_001] = "SLLW";
+        wCommands[0b0000000_101] = "SRLW";
+        wCommands[0b0100000_101] = "SRAW";
+        wCommands[0b0000001_000] = "MULW";
+        wCommands[0b0000001_100] = "DIVW";
+        wCommands[0b0000001_101] = "DIVUW";
+        wCommands[0b0000001_110] = "REMW";
+        wCommands[0b0000001_111] = "REMUW";
+
+        systemRegisters[0x001] = "fflags";
+        systemRegisters[0x002] = "frm";
+        systemRegisters[0x003] = "fcsr";
+        systemRegisters[0xc00] = "cycle";
+        systemRegisters[0xc01] = "time";
+        systemRegisters[0xc02] = "instret";
+        systemRegisters[0xc80] = "cycleh";
+        systemRegisters[0xc81] = "timeh";
+        systemRegisters[0xc82] = "instreth";
+
+        systemRegisters[0x100] = "sstatus";
+        systemRegisters[0x104] = "sie";
+        systemRegisters[0x105] = "stvec";
+        systemRegisters[0x106] = "scounteren";
+        systemRegisters[0x10a] = "senvcfg";
+        systemRegisters[0x140] = "sscratch";
+        systemRegisters[0x141] = "sepc";
+        systemRegisters[0x142] = "scause";
+        systemRegisters[0x143] = "stval";
+        systemRegisters[0x144] = "sip";
+        systemRegisters[0x180] = "satp";
+        systemRegisters[0x5a8] = "scontext";
+
+        systemRegisters[0x600] = "hstatus";
+        systemRegisters[0x602] = "hedeleg";
+        systemRegisters[0x603] = "hidelef";
+        systemRegisters[0x604] = "hie";
+        systemRegisters[0x605] = "htimedelta";
+        systemRegisters[0x606] = "hcounteren";
+        systemRegisters[0x607] = "hgeie";
+        systemRegisters[0x60a] = "henvcfg";
+        systemRegisters[0x615] = "htimedeltah";
+        systemRegisters[0x61a] = "henvcfgh";
+        systemRegisters[0x643] = "htval";
+        systemRegisters[0x644] = "hip";
+        systemRegisters[0x645] = "hvip";
+        systemRegisters[0x64a] = "htinst";
+        systemRegisters[0x680] = "hgatp";
+        systemRegisters[0x6a8] = "hcontext";
+        systemRegisters[0xe12] = "hgeip";
+
+        systemRegisters[0x200] = "vsstatus";
+        systemRegisters[0x204] = "vsie";
+        systemRegisters[0x205] = "vstvec";
+        systemRegisters[0x240] = "vsscratch";
+        systemRegisters[0x241] = "vsepc";
+        systemRegisters[0x242] = "vscause";
+        systemRegisters[0x243] = "vstval";
+        systemRegisters[0x244] = "vsip";
+        systemRegisters[0x280] = "vsatp";
+
+        systemRegisters[0xf11] = "mvendorid";
+        systemRegisters[0xf12] = "marchid";
+        systemRegisters[0xf13] = "mimpid";
+        systemRegisters[0xf14] = "mhartid";
+        systemRegisters[0xf15] = "mconfigptr";
+        systemRegisters[0x300] = "mstatus";
+        systemRegisters[0x301] = "misa";
+        systemRegisters[0x302] = "medeleg";
+        systemRegisters[0x303] = "mideleg";
+        systemRegisters[0x304] = "mie";
+        systemRegisters[0x305] = "mtvec";
+        systemRegisters[0x306] = "mcounteren";
+        systemRegisters[0x30a] = "menvcfg";
+        systemRegisters[0x310] = "mstatush";
+        systemRegisters[0x31a] = "menvcfgh";
+        systemRegisters[0x320] = "mcountinhibit";
+        systemRegisters[0x340] = "mscratch";
+        systemRegisters[0x341] = "mepc";
+        systemRegisters[0x342] = "mcause";
+        systemRegisters[0x343] = "mtval";
+        systemRegisters[0x344] = "mip";
+        systemRegisters[0x34a] = "mtinst";
+        systemRegisters[0x34b] = "mtval2";
+        systemRegisters[0x747] = "mseccfg";
+        systemRegisters[0x757] = "mseccfgh";
+        systemRegisters[0xb00] = "mcycle";
+        systemRegisters[0xb02] = "minstret";
+        systemRegisters[0xb80] = "mcycleh";
+        systemRegisters[0xb82] = "minstreth";
+
+        systemRegisters[0x7a0] = "tselect";
+        systemRegisters[0x7a1] = "tdata1";
+        systemRegisters[0x7a2] = "tdata2";
+        systemRegisters[0x7a3] = "tdata3";
+        systemRegisters[0x7a8] = "mcontext";
+        systemRegisters[0x7b0] = "dcsr";
+        systemRegisters[0x7b1] = "dpc";
+        systemRegisters[0x7b2] = "dscratch0";
+        systemRegisters[0x7b3] = "dscratch1";
 
-        temp = 12 * 256 + 8 * 16 + 3;
         for (int i = 0; i < 29; i++) {
-            systemRegisters.put(source.toBin(temp + i), "hpmcounter" + (i + 3) + "h");
+            systemRegisters[0xc03 + i] = "hpmcounter" + (i + 3);
+            systemRegisters[0xc83 + i] = "hpmcounter" + (i + 3) + "h";
+            systemRegisters[0xb03 + i] = "mhpmcounter" + (i + 3);
+            systemRegisters[0xb83 + i] = "mhpmcounter" + (i + 3) + "h";
+            systemRegisters[0x323 + i] = "mhpmevent" + (i + 3);
         }
 
-        temp = 3 * 256 + 16 * 10;
         for (int i = 0; i < 16; i++) {
-            systemRegisters.put(source.toBin(temp + i), "pmpcfg0" + i);
+            systemRegisters[0x3a0 + i] = "pmpcfg0" + i;
         }
 
-        temp = 3 * 256 + 16 * 11;
         for (int i = 0; i < 64; i++) {
-            systemRegisters.put(source.toBin(temp + i), "pmpaddr0" + i);
+            systemRegisters[0x3b0 + i] = "pmpaddr0" + i;
         }
 
-        temp = 11 * 256 + 3;
-        for (int i = 0; i < 29; i++) {
-            systemRegisters.put(source.toBin(temp + i), "mhpmcounter" + (i + 3));
+        for (int i = 0; i < 64; i++) {
+            cImmediates[i] = String.format("%6s", Integer.toBinaryString(i)).replace(' ', '0');
         }
 
-        temp = 11 * 256 + 16 * 8 + 3;
-        for (int i = 0; i < 29; i++) {
-            systemRegisters.put(source.toBin(temp + i), "mhpmcounter" + (i + 3) + "h");
+        for (int code = 0; code < compressedTable.length; code++) {
+            if ((code & 0b11) != 0b11) {
+                compressedTable[code] = describeCompressed(code, false);
+                compressedTable64[code] = describeCompressed(code, true);
+            }
         }
 
-        temp = 3 * 256 + 2 * 16 + 3;
-        for (int i = 0; i < 29; i++) {
-            systemRegisters.put(source.toBin(temp + i), "mhpmevent" + (i + 3));
+        for (String name : new String[]{"unknown_command", "LUI", "AUIPC", "JAL", "JALR", "ECALL", "EBREAK",
+                "SLLI", "SRLI", "SRAI"}) {
+            mnemonicId(name);
+        }
+        for (String[] commands : new String[][]{iCommands, loadCommands, sCommands, sbCommands, csrCommands,
+                rCommands}) {
+            for (String name : commands) {
+                if (name != null && !name.isEmpty()) {
+                    mnemonicId(name);
+                }
+            }
+        }
+        for (int i = 0; i < cCommands.length; i++) {
+            compressedIds[i] = mnemonicId(cCommands[i]);
+            compressedRoles[i] = describeRoles(cCommands[i]);
+        }
+        for (String[] commands : new String[][]{loadCommands64, sCommands64, {"ADDIW", "SLLIW", "SRLIW", "SRAIW"},
+                wCommands}) {
+            for (String name : commands) {
+                if (name != null) {
+                    mnemonicId(name);
+                }
+            }
+        }
+        jumpIds = new boolean[mnemonicIds.size()];
+        for (String name : new String[]{"JAL", "BEQ", "BNE", "BLT", "BGE", "BLTU", "BGEU", "C.JAL", "C.J",
+                "C.BEQZ", "C.BNEZ"}) {
+            jumpIds[mnemonicIds.get(name)] = true;
+        }
+    }
+
+    private static int mnemonicId(String name) {
+        return mnemonicIds.computeIfAbsent(name, key -> mnemonicIds.size());
+    }
+
+    private static int describeRoles(String command) {
+        switch (command) {
+            case "C.LI":
+            case "C.LUI":
+                return roles(FIRST, 0, 0);
+            case "C.ADDI":
+            case "C.SLLI":
+            case "C.ADDI16SP":
+            case "C.SRLI64":
+            case "C.SRAI64":
+            case "C.SLLI64":
+            case "C.ANDI":
+            case "C.ADDIW":
+            case "C.SRLI":
+            case "C.SRAI":
+                return roles(FIRST, FIRST, 0);
+            case "C.FLDSP":
+                return roles(FIRST, SP, 0);
+            case "C.JR":
+                return roles(0, FIRST, 0);
+            case "C.JALR":
+                return roles(RA, FIRST, 0);
+            case "C.MV":
+                return roles(FIRST, 0, SECOND);
+            case "C.SUB":
+            case "C.XOR":
+            case "C.OR":
+            case "C.AND":
+            case "C.SUBW":
+            case "C.ADDW":
+            case "C.ADD":
+                return roles(FIRST, FIRST, SECOND);
+            case "C.ADDI4SPN":
+            case "C.FLD":
+            case "C.LW":
+            case "C.FLW":
+            case "C.LWSP":
+            case "C.FLWSP":
+            case "C.LD":
+            case "C.LDSP":
+                return roles(FIRST, SECOND, 0);
+            case "C.FSD":
+            case "C.SW":
+            case "C.FSW":
+            case "C.SD":
+                return roles(0, FIRST, SECOND);
+            case "C.FSDSP":
+            case "C.SWSP":
+            case "C.FSWSP":
+            case "C.SDSP":
+                return roles(0, SECOND, FIRST);
+            case "C.JAL":
+                return roles(RA, 0, 0);
+            case "C.BEQZ":
+            case "C.BNEZ":
+                return roles(0, FIRST, 0);
+            default:
+                return roles(0, 0, 0);
         }
     }
 
-    public RISCV2Assembler(List<String> codes, ELFParser source) {
+    private static int roles(int rd, int rs1, int rs2) {
+        return rd | rs1 << 3 | rs2 << 6;
+    }
+
+    public RISCV2Assembler(ByteBuffer text, ELFParser source) {
+        this(text, source.getTextAddress(), ".text", source);
+    }
+
+    private RISCV2Assembler(ByteBuffer text, long textAddress, String name, ELFParser source) {
         this.source = source;
-        this.codes = codes;
-        this.address = (int) source.getTextAddress();
+        this.text = text;
+        this.textAddress = textAddress;
+        this.name = name;
+        this.wide = source.isWide();
+        this.loads = wide ? loadCommands64 : loadCommands;
+        this.stores = wide ? sCommands64 : sCommands;
+        this.compressed = wide ? compressedTable64 : compressedTable;
     }
 
     public StringBuilder convert() {
-        fillHashMaps();
-        run();
-        address = (int) source.getTextAddress();
-        return run();
+        try {
+            addTargets(collectTargets(0, text.limit()));
+            return run(null, 0, text.limit());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void setSymbols(SymbolIndex symbols) {
+        this.symbols = symbols;
+    }
+
+    public void convert(Writer out) throws IOException {
+        Metrics.Phase phase = metrics.begin("targets");
+        addTargets(collectTargets(0, text.limit()));
+        phase.end(text.limit());
+        phase = metrics.begin("decode");
+        run(out, 0, text.limit());
+        phase.end(text.limit());
+        countFormats();
+    }
+
+    private void countFormats() {
+        countFormats(metrics, this);
+    }
+
+    private static void countFormats(Metrics metrics, RISCV2Assembler... sections) {
+        if (!metrics.wantsMix()) {
+            return;
+        }
+        Metrics.Phase phase = metrics.begin("mix");
+        long[] counts = new long[Metrics.UNKNOWN + 1];
+        long size = 0;
+        for (RISCV2Assembler section : sections) {
+            section.countFormats(counts);
+            size += section.text.limit();
+        }
+        metrics.mix(counts);
+        phase.end(size);
+    }
+
+    private void countFormats(long[] counts) {
+        for (int i = 0; i + 1 < text.limit(); ) {
+            int code = fetch(i);
+            if ((code & 0b11) != 0b11) {
+                counts[(compressed[code] & 0x3f) == 0 ? Metrics.UNKNOWN : Metrics.RVC]++;
+                i += 2;
+            } else {
+                counts[formatOf(code)]++;
+                i += 4;
+            }
+        }
+    }
+
+    private int formatOf(int code) {
+        switch (code & 0x7f) {
+            case 0b0110011:
+                return rCommands[(code >>> 22) & 0x3f8 | funct3(code)] == null ? Metrics.UNKNOWN : Metrics.R;
+            case 0b0111011:
+                return !wide || wCommands[(code >>> 22) & 0x3f8 | funct3(code)] == null ? Metrics.UNKNOWN : Metrics.R;
+            case 0b0010011:
+            case 0b1100111:
+                return Metrics.I;
+            case 0b0011011:
+                return wide && wImmediateCommand(code) != null ? Metrics.I : Metrics.UNKNOWN;
+            case 0b0000011:
+                return loads[funct3(code)] == null ? Metrics.UNKNOWN : Metrics.I;
+            case 0b0100011:
+                return stores[funct3(code)] == null ? Metrics.UNKNOWN : Metrics.S;
+            case 0b1100011:
+                return sbCommands[funct3(code)] == null ? Metrics.UNKNOWN : Metrics.SB;
+            case 0b0110111:
+            case 0b0010111:
+                return Metrics.U;
+            case 0b1101111:
+                return Metrics.J;
+            case 0b1110011:
+                return funct3(code) == 4 ? Metrics.UNKNOWN : Metrics.CSR;
+            default:
+                return Metrics.UNKNOWN;
+        }
+    }
+
+    public InstructionTable decodeTable() {
+        InstructionTable table = new InstructionTable(mnemonics(), text.limit() / 3);
+        decodeRecords(table, 0, text.limit());
+        return resolveTargets(table);
+    }
+
+    public static InstructionTable decodeTable(RISCV2Assembler[] sections, ELFParser previous,
+                                               InstructionTable previousTable) throws IOException {
+        if (!Arrays.equals(previousTable.getMnemonics(), mnemonics())) {
+            return decodeTable(sections);
+        }
+        Map<String, Integer> oldFunctions = new HashMap<>();
+        for (int k = 0; k < previous.getSymbolCount(); k++) {
+            if (previous.isFunction(k) && previous.getSymbolSize(k) != 0) {
+                oldFunctions.putIfAbsent(previous.getSymbolName(k), k);
+            }
+        }
+        RISCV2Assembler[] oldSections = sections(previous);
+        RISCV2Assembler[] sorted = sections.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(section -> section.textAddress));
+        long size = 0;
+        for (RISCV2Assembler section : sorted) {
+            size += section.text.limit();
+        }
+        InstructionTable table = new InstructionTable(mnemonics(), (int) (size / 3));
+        for (RISCV2Assembler section : sorted) {
+            section.decodeRecords(table, previous, oldSections, oldFunctions, previousTable);
+        }
+        return sorted[0].resolveTargets(table);
+    }
+
+    private void decodeRecords(InstructionTable table, ELFParser previous, RISCV2Assembler[] oldSections,
+                               Map<String, Integer> oldFunctions, InstructionTable previousTable) {
+        long address = textAddress;
+        List<long[]> functions = new ArrayList<>();
+        for (int k = 0; k < source.getSymbolCount(); k++) {
+            long start = source.getSymbolValue(k) - address;
+            long size = source.getSymbolSize(k);
+            if (source.isFunction(k) && size != 0 && start >= 0 && start + size <= text.limit()) {
+                functions.add(new long[]{start, size, k});
+            }
+        }
+        functions.sort(Comparator.comparingLong(function -> function[0]));
+
+        int position = 0;
+        for (long[] function : functions) {
+            int start = (int) function[0];
+            int size = (int) function[1];
+            Integer old = oldFunctions.get(source.getSymbolName((int) function[2]));
+            if (start < position || old == null || previous.getSymbolSize(old) != size) {
+                continue;
+            }
+            RISCV2Assembler oldSection = containing(oldSections, previous.getSymbolValue(old), size);
+            if (oldSection == null) {
+                continue;
+            }
+            long oldAddress = oldSection.textAddress;
+            long oldStart = previous.getSymbolValue(old) - oldAddress;
+            if (!text.slice(start, size).equals(oldSection.text.slice((int) oldStart, size))) {
+                continue;
+            }
+            int first = previousTable.find((int) (oldAddress + oldStart));
+            int last = previousTable.find((int) (oldAddress + oldStart + size));
+            if (first < 0 || last < 0) {
+                continue;
+            }
+            position = decodeRecords(table, position, start);
+            if (position != start) {
+                continue;
+            }
+            int delta = (int) (address + start - oldAddress - oldStart);
+            for (int r = first; r < last; r++) {
+                table.add(previousTable.getAddress(r) + delta, previousTable.getLength(r),
+                        previousTable.getOpcode(r), previousTable.getRd(r), previousTable.getRs1(r),
+                        previousTable.getRs2(r), previousTable.getImmediate(r), InstructionTable.NO_TARGET);
+            }
+            position = start + size;
+        }
+        decodeRecords(table, position, text.limit());
+    }
+
+    private static RISCV2Assembler containing(RISCV2Assembler[] sections, long address, long size) {
+        for (RISCV2Assembler section : sections) {
+            if (address >= section.textAddress && address + size <= section.textAddress + section.text.limit()) {
+                return section;
+            }
+        }
+        return null;
+    }
+
+    private int decodeRecords(InstructionTable table, int from, int to) {
+        int pc = (int) textAddress + from;
+        int i = from;
+        while (i < to && i + 1 < text.limit()) {
+            int code = fetch(i);
+            if ((code & 0b11) != 0b11) {
+                recordCompressed(table, code, pc);
+                i += 2;
+                pc += 2;
+            } else {
+                record(table, code, pc);
+                i += 4;
+                pc += 4;
+            }
+        }
+        return i;
+    }
+
+    private InstructionTable resolveTargets(InstructionTable table) {
+        int[] targets = new int[16];
+        int count = 0;
+        for (int r = 0; r < table.size(); r++) {
+            if (jumpIds[table.getOpcode(r)]) {
+                targets = append(targets, count++, table.getAddress(r) + table.getImmediate(r));
+            }
+        }
+        addTargets(Arrays.copyOf(targets, count));
+        int[] labels = source.getSymAddresses();
+        Arrays.sort(labels);
+        table.setLabels(labels, source.getLabelNames(labels));
+        for (int r = 0; r < table.size(); r++) {
+            if (jumpIds[table.getOpcode(r)]) {
+                table.setTarget(r, Arrays.binarySearch(labels, table.getAddress(r) + table.getImmediate(r)));
+            }
+        }
+        return table;
+    }
+
+    private static String[] mnemonics() {
+        return mnemonicIds.keySet().toArray(new String[0]);
+    }
+
+    private void recordCompressed(InstructionTable table, int code, int pc) {
+        long entry = compressed[code];
+        int command = (int) entry & 0x3f;
+        int roles = compressedRoles[command];
+        table.add(pc, 2, compressedIds[command], role(roles & 0x7, entry), role((roles >>> 3) & 0x7, entry),
+                role(roles >>> 6, entry), (int) (entry >>> 32), InstructionTable.NO_TARGET);
+    }
+
+    private static int role(int role, long entry) {
+        switch (role) {
+            case FIRST:
+                return (int) (entry >>> 10) & 0x1f;
+            case SECOND:
+                return (int) (entry >>> 15) & 0x1f;
+            case RA:
+                return 1;
+            case SP:
+                return 2;
+            default:
+                return InstructionTable.NO_REGISTER;
+        }
+    }
+
+    private void record(InstructionTable table, int code, int pc) {
+        int none = InstructionTable.NO_REGISTER;
+        String name;
+        switch (code & 0x7f) {
+            case 0b0110011:
+                name = rCommands[(code >>> 22) & 0x3f8 | funct3(code)];
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), rd(code), rs1(code), rs2(code), 0,
+                            InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b0111011:
+                name = wide ? wCommands[(code >>> 22) & 0x3f8 | funct3(code)] : null;
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), rd(code), rs1(code), rs2(code), 0,
+                            InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b0011011:
+                name = wide ? wImmediateCommand(code) : null;
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), rd(code), rs1(code), none,
+                            funct3(code) == 0 ? code >> 20 : (code >>> 20) & 0x1f, InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b0010011:
+                int func = funct3(code);
+                if (func == 0b001 || func == 0b101) {
+                    name = func == 0b001 ? "SLLI" : (code & 0x40000000) != 0 ? "SRAI" : "SRLI";
+                    table.add(pc, 4, mnemonicIds.get(name), rd(code), rs1(code), none, shiftAmount(code),
+                            InstructionTable.NO_TARGET);
+                } else {
+                    table.add(pc, 4, mnemonicIds.get(iCommands[func]), rd(code), rs1(code), none, code >> 20,
+                            InstructionTable.NO_TARGET);
+                }
+                return;
+            case 0b0000011:
+                name = loads[funct3(code)];
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), rd(code), rs1(code), none, code >> 20,
+                            InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b0100011:
+                name = stores[funct3(code)];
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), none, rs1(code), rs2(code),
+                            (code >> 25) << 5 | rd(code), InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b1100011:
+                name = sbCommands[funct3(code)];
+                if (name != null) {
+                    table.add(pc, 4, mnemonicIds.get(name), none, rs1(code), rs2(code), bImmediate(code),
+                            InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            case 0b0110111:
+            case 0b0010111:
+                table.add(pc, 4, mnemonicIds.get((code & 0x7f) == 0b0110111 ? "LUI" : "AUIPC"), rd(code), none, none,
+                        code >> 12, InstructionTable.NO_TARGET);
+                return;
+            case 0b1101111:
+                table.add(pc, 4, mnemonicIds.get("JAL"), rd(code), none, none, jImmediate(code),
+                        InstructionTable.NO_TARGET);
+                return;
+            case 0b1100111:
+                table.add(pc, 4, mnemonicIds.get("JALR"), rd(code), rs1(code), none, code >> 20,
+                        InstructionTable.NO_TARGET);
+                return;
+            case 0b1110011:
+                if (funct3(code) == 0) {
+                    table.add(pc, 4, mnemonicIds.get((code >>> 20) == 0 ? "ECALL" : "EBREAK"), none, none, none, 0,
+                            InstructionTable.NO_TARGET);
+                    return;
+                } else if (funct3(code) != 4) {
+                    table.add(pc, 4, mnemonicIds.get(csrCommands[funct3(code)]), rd(code), rs1(code), none,
+                            code >>> 20, InstructionTable.NO_TARGET);
+                    return;
+                }
+                break;
+            default:
+                break;
+        }
+        table.add(pc, 4, 0, none, none, none, 0, InstructionTable.NO_TARGET);
+    }
+
+    public String format(int address) {
+        int offset = (int) (Integer.toUnsignedLong(address) - textAddress);
+        int code = fetch(offset);
+        StringBuilder line = new StringBuilder();
+        if ((code & 0b11) != 0b11) {
+            decodeCompressed(line, code, address, false);
+        } else {
+            decode(line, code, address, false);
+        }
+        return line.toString();
     }
 
-    private StringBuilder run() {
+    public void convert(Writer out, long from, long to) throws IOException {
+        int start = (int) Math.max(0, Math.min(text.limit(), from - textAddress));
+        int end = (int) Math.max(start, Math.min(text.limit(), to - textAddress));
+        int[] targets = collectTargets(start, end);
+        source.indexLabels(textAddress + start, textAddress + end, targets);
+        addTargets(targets);
+        run(out, start, end);
+    }
+
+    public void write(Writer out, long from, long to) throws IOException {
+        int start = (int) Math.max(0, Math.min(text.limit(), from - textAddress));
+        int end = (int) Math.max(start, Math.min(text.limit(), to - textAddress));
+        run(out, start, end);
+    }
+
+    public static RISCV2Assembler[] sections(ELFParser source) throws IOException {
+        RISCV2Assembler[] sections = new RISCV2Assembler[source.getCodeSectionCount()];
+        for (int k = 0; k < sections.length; k++) {
+            sections[k] = new RISCV2Assembler(source.parseCode(k), source.getCodeSectionAddress(k),
+                    source.getCodeSectionName(k), source);
+        }
+        return sections;
+    }
+
+    public static void prepare(RISCV2Assembler[] sections, ForkJoinPool pool) {
+        int[] targets = new int[0];
+        List<ForkJoinTask<int[]>> tasks = new ArrayList<>();
+        for (RISCV2Assembler section : sections) {
+            if (pool == null) {
+                targets = concat(targets, section.collectTargets(0, section.text.limit()));
+                continue;
+            }
+            int[] bounds = section.chunkBounds();
+            for (int c = 0; c + 1 < bounds.length; c++) {
+                int from = bounds[c];
+                int to = bounds[c + 1];
+                tasks.add(pool.submit(() -> section.collectTargets(from, to)));
+            }
+        }
+        for (ForkJoinTask<int[]> task : tasks) {
+            targets = concat(targets, task.join());
+        }
+        sections[0].addTargets(targets);
+    }
+
+    public static void convert(Writer out, RISCV2Assembler[] sections, ForkJoinPool pool) throws IOException {
+        Metrics metrics = sections[0].metrics;
+        long size = 0;
+        for (RISCV2Assembler section : sections) {
+            size += section.text.limit();
+        }
+        Metrics.Phase phase = metrics.begin("targets");
+        prepare(sections, pool);
+        phase.end(size);
+
+        phase = metrics.begin("decode");
+        ArrayDeque<ForkJoinTask<StringBuilder>> window = new ArrayDeque<>();
+        char[] chunk = new char[BUFFER_SIZE * 2];
+        for (int k = 0; k < sections.length; k++) {
+            RISCV2Assembler section = sections[k];
+            String header = (k == 0 ? "" : System.lineSeparator()) + section.name + System.lineSeparator();
+            if (pool == null) {
+                out.write(header);
+                section.run(out, 0, section.text.limit());
+                continue;
+            }
+            int[] bounds = section.chunkBounds();
+            for (int c = 0; c + 1 < bounds.length; c++) {
+                int from = bounds[c];
+                int to = bounds[c + 1];
+                String prefix = c == 0 ? header : "";
+                window.add(pool.submit(() -> section.run(null, from, to).insert(0, prefix)));
+                if (window.size() > pool.getParallelism() * 2) {
+                    flush(window.poll().join(), chunk, out);
+                }
+            }
+        }
+        while (!window.isEmpty()) {
+            flush(window.poll().join(), chunk, out);
+        }
+        phase.end(size);
+        countFormats(metrics, sections);
+    }
+
+    public static void convert(Writer out, RISCV2Assembler[] sections, long from, long to) throws IOException {
+        int[] targets = new int[0];
+        long low = to;
+        long high = from;
+        for (RISCV2Assembler section : sections) {
+            int start = (int) Math.max(0, Math.min(section.text.limit(), from - section.textAddress));
+            int end = (int) Math.max(start, Math.min(section.text.limit(), to - section.textAddress));
+            targets = concat(targets, section.collectTargets(start, end));
+            low = Math.min(low, section.textAddress + start);
+            high = Math.max(high, section.textAddress + end);
+        }
+        sections[0].source.indexLabels(low, high, targets);
+        sections[0].addTargets(targets);
+        write(out, sections, from, to);
+    }
+
+    public static void write(Writer out, RISCV2Assembler[] sections, long from, long to) throws IOException {
+        boolean first = true;
+        for (RISCV2Assembler section : sections) {
+            long end = section.textAddress + section.text.limit();
+            if (sections.length > 1 && (to <= section.textAddress || from >= end)) {
+                continue;
+            }
+            out.write(first ? "" : System.lineSeparator());
+            out.write(section.name);
+            out.write(System.lineSeparator());
+            section.write(out, from, to);
+            first = false;
+        }
+    }
+
+    public static InstructionTable decodeTable(RISCV2Assembler[] sections) {
+        RISCV2Assembler[] sorted = sections.clone();
+        Arrays.sort(sorted, Comparator.comparingLong(section -> section.textAddress));
+        long size = 0;
+        for (RISCV2Assembler section : sorted) {
+            size += section.text.limit();
+        }
+        InstructionTable table = new InstructionTable(mnemonics(), (int) (size / 3));
+        for (RISCV2Assembler section : sorted) {
+            section.decodeRecords(table, 0, section.text.limit());
+        }
+        return sorted[0].resolveTargets(table);
+    }
+
+    public void convert(Writer out, ForkJoinPool pool) throws IOException {
+        Metrics.Phase phase = metrics.begin("targets");
+        int[] bounds = chunkBounds();
+        List<ForkJoinTask<int[]>> targets = new ArrayList<>();
+        for (int c = 0; c + 1 < bounds.length; c++) {
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            targets.add(pool.submit(() -> collectTargets(from, to)));
+        }
+        int[] all = new int[0];
+        for (ForkJoinTask<int[]> task : targets) {
+            int[] chunk = task.join();
+            int count = all.length;
+            all = Arrays.copyOf(all, count + chunk.length);
+            System.arraycopy(chunk, 0, all, count, chunk.length);
+        }
+        addTargets(all);
+        phase.end(text.limit());
+
+        phase = metrics.begin("decode");
+        ArrayDeque<ForkJoinTask<StringBuilder>> window = new ArrayDeque<>();
+        char[] chunk = new char[BUFFER_SIZE * 2];
+        for (int c = 0; c + 1 < bounds.length; c++) {
+            int from = bounds[c];
+            int to = bounds[c + 1];
+            window.add(pool.submit(() -> run(null, from, to)));
+            if (window.size() > pool.getParallelism() * 2) {
+                flush(window.poll().join(), chunk, out);
+            }
+        }
+        while (!window.isEmpty()) {
+            flush(window.poll().join(), chunk, out);
+        }
+        phase.end(text.limit());
+        countFormats();
+    }
+
+    public void convert(Writer out, BlockingQueue<Integer> loaded, ForkJoinPool pool)
+            throws IOException, InterruptedException {
+        Metrics.Phase phase = metrics.begin("targets");
+        int[] targets = new int[0];
+        int position = 0;
+        int available = 0;
+        while (available < text.limit()) {
+            available = loaded.take();
+            if (available < 0) {
+                throw new IOException("Reading of .text was aborted.");
+            }
+            int end = available == text.limit() ? available : boundary(position, available);
+            int[] found = collectTargets(position, end);
+            int count = targets.length;
+            targets = Arrays.copyOf(targets, count + found.length);
+            System.arraycopy(found, 0, targets, count, found.length);
+            position = end;
+        }
+        addTargets(targets);
+        phase.end(text.limit());
+
+        phase = metrics.begin("decode");
+        BlockingQueue<StringBuilder> decoded = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        StringBuilder last = new StringBuilder();
+        IOException[] failure = new IOException[1];
+        Thread writer = new Thread(() -> {
+            char[] chunk = new char[BUFFER_SIZE * 2];
+            try {
+                for (StringBuilder block = decoded.take(); block != last; block = decoded.take()) {
+                    if (failure[0] == null) {
+                        try {
+                            flush(block, chunk, out);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "listing-writer");
+        writer.start();
+        try {
+            int[] bounds = chunkBounds();
+            ArrayDeque<ForkJoinTask<StringBuilder>> window = new ArrayDeque<>();
+            for (int c = 0; c + 1 < bounds.length; c++) {
+                int from = bounds[c];
+                int to = bounds[c + 1];
+                if (pool == null) {
+                    decoded.put(run(null, from, to));
+                    continue;
+                }
+                window.add(pool.submit(() -> run(null, from, to)));
+                if (window.size() > pool.getParallelism() * 2) {
+                    decoded.put(window.poll().join());
+                }
+            }
+            while (!window.isEmpty()) {
+                decoded.put(window.poll().join());
+            }
+        } finally {
+            decoded.put(last);
+            writer.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        phase.end(text.limit());
+        countFormats();
+    }
+
+    private int boundary(int from, int available) {
+        int i = from;
+        while (i + 4 <= available) {
+            i += (text.get(i) & 0b11) == 0b11 ? 4 : 2;
+        }
+        return i;
+    }
+
+    private int[] chunkBounds() {
+        int[] bounds = new int[text.limit() / CHUNK_SIZE + 2];
+        int count = 1;
+        int next = CHUNK_SIZE;
+        for (int i = 0; i + 1 < text.limit(); i += (text.get(i) & 0b11) == 0b11 ? 4 : 2) {
+            if (i >= next) {
+                bounds[count++] = i;
+                next = i + CHUNK_SIZE;
+            }
+        }
+        bounds[count++] = text.limit();
+        return Arrays.copyOf(bounds, count);
+    }
+
+    private int[] collectTargets(int from, int to) {
+        int[] targets = new int[16];
+        int count = 0;
+        int pc = (int) textAddress + from;
+        for (int i = from; i + 1 < to; ) {
+            int code = fetch(i);
+            if ((code & 0b11) != 0b11) {
+                long entry = compressed[code];
+                int layout = (int) (entry >>> 6) & 0xf;
+                if (layout == JUMP || layout == BRANCH) {
+                    targets = append(targets, count++, pc + (int) (entry >>> 32));
+                }
+                i += 2;
+                pc += 2;
+            } else {
+                if ((code & 0x7f) == 0b1101111) {
+                    targets = append(targets, count++, pc + jImmediate(code));
+                } else if ((code & 0x7f) == 0b1100011 && sbCommands[funct3(code)] != null) {
+                    targets = append(targets, count++, pc + bImmediate(code));
+                }
+                i += 4;
+                pc += 4;
+            }
+        }
+        return Arrays.copyOf(targets, count);
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+
+    private static int[] append(int[] array, int count, int value) {
+        if (count == array.length) {
+            array = Arrays.copyOf(array, count * 2);
+        }
+        array[count] = value;
+        return array;
+    }
+
+    private void addTargets(int[] targets) {
+        source.addTargets(targets);
+    }
+
+    private StringBuilder run(Writer out, int from, int to) throws IOException {
         StringBuilder result = new StringBuilder();
-        for (String code : codes) {
-            if (code.length() == 16) {
-                String temp = code.substring(14);
-                int arg0;
-                String arg1;
-                String arg2 = "";
-                String arg3;
-                String arg4;
-                String arg5;
-                String part0, part2, part4;
-                arg0 = address;
-                arg1 = addSym();
-                switch (temp) {
-                    case "00":
-                        part0 = code.substring(0, 3);
-                        part2 = code.substring(6, 9);
-                        part4 = code.substring(11, 14);
-                        arg2 = q0Commands.get(part0);
-                        if (part0.charAt(0) == '0') {
-                            arg3 = cRegisters.get(part4);
-                            arg4 = cRegisters.get(part2);
-                        } else {
-                            arg3 = cRegisters.get(part2);
-                            arg4 = cRegisters.get(part4);
+        char[] chunk = new char[BUFFER_SIZE * 2];
+        int pc = (int) textAddress + from;
+        for (int i = from; i + 1 < to; ) {
+            int code = fetch(i);
+            if ((code & 0b11) != 0b11) {
+                decodeCompressed(result, code, pc, true);
+                i += 2;
+                pc += 2;
+            } else {
+                decode(result, code, pc, true);
+                i += 4;
+                pc += 4;
+            }
+            if (out != null && result.length() >= BUFFER_SIZE) {
+                flush(result, chunk, out);
+            }
+        }
+        if (out != null) {
+            flush(result, chunk, out);
+        }
+        return result;
+    }
+
+    private int fetch(int offset) {
+        int code = text.getShort(offset) & 0xFFFF;
+        if ((code & 0b11) == 0b11 && offset + 3 < text.limit()) {
+            code |= text.getShort(offset + 2) << 16;
+        }
+        return code;
+    }
+
+    private static void flush(StringBuilder result, char[] chunk, Writer out) throws IOException {
+        for (int from = 0; from < result.length(); from += chunk.length) {
+            int to = Math.min(result.length(), from + chunk.length);
+            result.getChars(from, to, chunk, 0);
+            out.write(chunk, 0, to - from);
+        }
+        result.setLength(0);
+    }
+
+    private void decode(StringBuilder out, int code, int pc, boolean labelled) {
+        switch (code & 0x7f) {
+            case 0b0110011:
+                decodeRFormat(out, code, pc, labelled, rCommands);
+                break;
+            case 0b0111011:
+                decodeRFormat(out, code, pc, labelled, wide ? wCommands : null);
+                break;
+            case 0b0010011:
+                decodeIFormat(out, code, pc, labelled);
+                break;
+            case 0b0011011:
+                decodeIWFormat(out, code, pc, labelled);
+                break;
+            case 0b0000011:
+                decodeLoadFormat(out, code, pc, labelled);
+                break;
+            case 0b0100011:
+                decodeSFormat(out, code, pc, labelled);
+                break;
+            case 0b1100011:
+                decodeSBFormat(out, code, pc, labelled);
+                break;
+            case 0b0110111:
+                begin(out, pc, labelled, "LUI").append(' ').append(registers[rd(code)])
+                        .append(", ").append(code >> 12).append('\n');
+                break;
+            case 0b0010111:
+                begin(out, pc, labelled, "AUIPC").append(' ').append(registers[rd(code)])
+                        .append(", ").append(code >> 12).append('\n');
+                break;
+            case 0b1101111:
+                int offset = jImmediate(code);
+                begin(out, pc, labelled, "JAL").append(' ').append(registers[rd(code)]).append(", ").append(offset);
+                target(out, pc + offset);
+                break;
+            case 0b1100111:
+                begin(out, pc, labelled, "JALR").append(' ').append(registers[rd(code)]).append(", ")
+                        .append(code >> 20).append('(').append(registers[rs1(code)]).append(")\n");
+                break;
+            case 0b1110011:
+                int funct3 = funct3(code);
+                if (funct3 == 0) {
+                    begin(out, pc, labelled, (code >>> 20) == 0 ? "ECALL" : "EBREAK").append('\n');
+                    break;
+                }
+                begin(out, pc, labelled, csrCommands[funct3]).append(' ').append(registers[rd(code)]).append(", ");
+                if (funct3 < 4) {
+                    out.append(registers[rs1(code)]);
+                } else {
+                    out.append((code << 12) >> 27);
+                }
+                out.append(", ").append(systemRegisters[code >>> 20]).append('\n');
+                break;
+            default:
+                begin(out, pc, labelled, "unknown_command").append('\n');
+        }
+    }
+
+    private void decodeCompressed(StringBuilder out, int code, int pc, boolean labelled) {
+        long entry = compressed[code];
+        String first = registers[(int) (entry >>> 10) & 0x1f];
+        String second = registers[(int) (entry >>> 15) & 0x1f];
+        int immediate = (int) (entry >>> 32);
+        begin(out, pc, labelled, cCommands[(int) entry & 0x3f]);
+        switch ((int) (entry >>> 6) & 0xf) {
+            case NONE:
+                break;
+            case IMMEDIATE:
+                out.append(' ').append(immediate);
+                break;
+            case REGISTER:
+                out.append(' ').append(first);
+                break;
+            case REGISTER_IMMEDIATE:
+                out.append(' ').append(first).append(", ").append(immediate);
+                break;
+            case REGISTER_BINARY:
+                out.append(' ').append(first).append(", ").append(cImmediates[immediate]);
+                break;
+            case TWO_REGISTERS:
+                out.append(' ').append(first).append(", ").append(second);
+                break;
+            case TWO_REGISTERS_IMMEDIATE:
+                out.append(' ').append(first).append(", ").append(second).append(", ").append(immediate);
+                break;
+            case LOAD_STORE:
+                out.append(' ').append(first).append(", ").append(immediate).append('(').append(second).append(')');
+                break;
+            case REGISTER_OFFSET:
+                out.append(' ').append(first).append(", ").append(second).append('(').append(immediate).append(')');
+                break;
+            case JUMP:
+                out.append(' ').append(immediate);
+                target(out, pc + immediate);
+                return;
+            default:
+                out.append(' ').append(first).append(", ").append(immediate);
+                target(out, pc + immediate);
+                return;
+        }
+        out.append('\n');
+    }
+
+    private static long describeCompressed(int code, boolean wide) {
+        int funct3 = code >>> 13;
+        int rd = rd(code);
+        int rs2 = (code >>> 2) & 0x1f;
+        int low = cRegister(code >>> 2);
+        int high = cRegister(code >>> 7);
+        int bit12 = (code >>> 12) & 0x1;
+        int sixBitImm = bit12 << 5 | rs2;
+        switch (code & 0b11) {
+            case 0b00:
+                switch (funct3) {
+                    case 0b000:
+                        return entry("C.ADDI4SPN", TWO_REGISTERS_IMMEDIATE, low, 2,
+                                ((code >>> 7) & 0xf) << 6 | ((code >>> 11) & 0x3) << 4
+                                        | ((code >>> 5) & 0x1) << 3 | ((code >>> 6) & 0x1) << 2);
+                    case 0b001:
+                    case 0b101:
+                        return entry(q0Commands[funct3], REGISTER_OFFSET, funct3 < 4 ? low : high, funct3 < 4 ? high : low,
+                                ((code >>> 5) & 0x3) << 6 | ((code >>> 10) & 0x7) << 3);
+                    case 0b100:
+                        return entry("unknown_command", NONE, 0, 0, 0);
+                    default:
+                        if (wide && (funct3 & 0b1) == 0b1) {
+                            return entry(funct3 < 4 ? "C.LD" : "C.SD", REGISTER_OFFSET, funct3 < 4 ? low : high,
+                                    funct3 < 4 ? high : low, ((code >>> 5) & 0x3) << 6 | ((code >>> 10) & 0x7) << 3);
                         }
-                        switch (part0) {
-                            case "000":
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        "" + code.substring(5, 9) +
-                                                code.substring(3, 5) + code.charAt(10) + code.charAt(9) + "00")
-                                );
-                                result.append(toFormat(arg0, arg1, arg2, arg3, "sp", arg4));
-                                break;
-                            case "001":
-                            case "101":
-                                arg5 = String.valueOf(source.fromAbsBin("" + code.substring(9, 11) +
-                                        code.substring(3, 6) + "000"));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, arg5));
-                                break;
-                            case "011":
-                            case "111":
-                            case "010":
-                            case "110":
-                                arg5 = String.valueOf(source.fromAbsBin(
-                                        "" + code.charAt(10) +
-                                                code.substring(3, 6) + code.charAt(9) + "00")
-                                );
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, arg5));
-                                break;
-                            default:
-                                arg2 = "unknown_command";
-                                result.append(toFormat(arg0, arg1, arg2));
-                                break;
+                        return entry(q0Commands[funct3], REGISTER_OFFSET, funct3 < 4 ? low : high, funct3 < 4 ? high : low,
+                                ((code >>> 5) & 0x1) << 6 | ((code >>> 10) & 0x7) << 3 | ((code >>> 6) & 0x1) << 2);
+                }
+            case 0b01:
+                switch (funct3) {
+                    case 0b000:
+                        if (rd == 0) {
+                            return entry("C.NOP", IMMEDIATE, 0, 0, signExtend(sixBitImm, 6));
                         }
-                        break;
-                    case "01":
-                        String fiveFourZeroImm = "" + code.charAt(3) + code.substring(9, 14);
-                        String repeatedString = String.valueOf(source.fromBin(
-                                fiveFourZeroImm)
-                        );
-                        part0 = code.substring(0, 3);
-                        String number = "" + code.charAt(3) +
-                                code.charAt(7) +
-                                code.charAt(5) + code.charAt(6) +
-                                code.charAt(9) + code.charAt(8) +
-                                code.charAt(13) +
-                                code.charAt(4) +
-                                code.substring(10, 13) + "0";
-                        String number1 = "" + code.charAt(3) + code.substring(9, 11) +
-                                code.charAt(13) +
-                                code.substring(4, 6) +
-                                code.substring(11, 13) + "0";
-                        switch (part0) {
-                            case "000":
-                                if (code.startsWith("00000", 4)) {
-                                    arg2 = "C.NOP";
-                                    arg3 = repeatedString;
-                                    result.append(toFormat(arg0, arg1, arg2, arg3));
-                                } else {
-                                    arg2 = "C.ADDI";
-                                    arg3 = getRegister(code.substring(4, 9));
-                                    arg4 = repeatedString;
-                                    result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                }
-                                break;
-                            case "001":
-                                arg2 = "C.JAL";
-                                int la = source.fromBin(number);
-                                arg3 = String.valueOf(la);
-                                source.addSym(la + address - 4);
-                                result.append(toJumpFormat(arg0, arg1, arg2, arg3, la + address - 4));
-                                break;
-                            case "010":
-                                arg2 = "C.LI";
-                                arg3 = getRegister(code.substring(4, 9));
-                                arg4 = repeatedString;
-                                result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                break;
-                            case "011":
-                                String regOrTwo = code.substring(4, 9);
-                                if (regOrTwo.equals("00010")) {
-                                    arg2 = "C.ADDI16SP";
-                                    arg3 = String.valueOf(source.fromBin(
-                                            "" + code.charAt(3) +
-                                                    code.substring(11, 13) +
-                                                    code.charAt(10) +
-                                                    code.charAt(13) +
-                                                    code.charAt(9) + "0000"
-
-                                    ));
-                                    result.append(toFormat(arg0, arg1, arg2, "sp", arg3));
-                                } else {
-                                    arg2 = "C.LUI";
-                                    arg3 = getRegister(regOrTwo);
-                                    arg4 = String.valueOf(source.fromBin(
-                                            "" + code.charAt(3) + code.substring(9, 14) + "000000000000"
-                                    ));
-                                    result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                }
-                                break;
-                            case "100":
-                                String subCode = code.substring(4, 6);
-                                String destReg0 = cRegisters.get(code.substring(6, 9));
-                                String srcReg = cRegisters.get(code.substring(11, 14));
-                                switch (subCode) {
-                                    case "00":
-                                        if (!fiveFourZeroImm.equals("00000")) {
-                                            arg2 = "C.SRLI64";
-                                            arg3 = destReg0;
-                                            result.append(toFormat(arg0, arg1, arg2, arg3));
-                                        } else {
-                                            arg2 = "C.SRLI";
-                                            arg3 = destReg0;
-                                            arg4 = fiveFourZeroImm;
-                                            result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                        }
-                                        break;
-                                    case "01":
-                                        if (!fiveFourZeroImm.equals("00000")) {
-                                            arg2 = "C.SRAI64";
-                                            arg3 = destReg0;
-                                            result.append(toFormat(arg0, arg1, arg2, arg3));
-                                        } else {
-                                            arg2 = "C.SRAI";
-                                            arg3 = destReg0;
-                                            arg4 = fiveFourZeroImm;
-                                            result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                        }
-                                        break;
-                                    case "10":
-                                        arg2 = "C.ANDI";
-                                        arg3 = destReg0;
-                                        arg4 = fiveFourZeroImm;
-                                        result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                        break;
-                                    case "11":
-                                        String subSubCode = code.substring(9, 11);
-                                        arg3 = destReg0;
-                                        arg4 = srcReg;
-                                        if (code.charAt(3) == '0') {
-                                            switch (subSubCode) {
-                                                case "00":
-                                                    arg2 = "C.SUB";
-                                                    break;
-                                                case "01":
-                                                    arg2 = "C.XOR";
-                                                    break;
-                                                case "10":
-                                                    arg2 = "C.OR";
-                                                    break;
-                                                case "11":
-                                                    arg2 = "C.AND";
-                                                    break;
-                                            }
-                                            result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                        } else {
-                                            switch (subSubCode) {
-                                                case "00":
-                                                    arg2 = "C.SUBW";
-                                                    result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                                    break;
-                                                case "01":
-                                                    arg2 = "C.ADDW";
-                                                    result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                                    break;
-                                                default:
-                                                    arg2 = "unknown_command";
-                                                    result.append(toFormat(arg0, arg1, arg2));
-                                                    break;
-                                            }
-                                        }
-                                        break;
-                                }
-                                break;
-                            case "101":
-                                arg2 = "C.J";
-                                int lc = source.fromBin(
-                                        number
-                                );
-                                arg3 = String.valueOf(lc);
-                                source.addSym(address + lc - 4);
-                                result.append(toJumpFormat(arg0, arg1, arg2, arg3, address + lc - 4));
-                                break;
-                            case "110":
-                                arg2 = "C.BEQZ";
-                                arg3 = cRegisters.get(code.substring(6, 9));
-                                int lb = source.fromBin(
-                                        number1
-                                );
-                                arg4 = String.valueOf(lb);
-                                source.addSym(address + lb - 4);
-                                result.append(toJumpFormat(arg0, arg1, arg2, arg3, arg4, address + lb - 4));
-                                break;
-                            case "111":
-                                arg2 = "C.BNEZ";
-                                arg3 = cRegisters.get(code.substring(6, 9));
-                                int ld = source.fromBin(
-                                        number1
-                                );
-                                arg4 = String.valueOf(ld);
-                                source.addSym(ld + address - 4);
-                                result.append(toJumpFormat(arg0, arg1, arg2, arg3, arg4, ld + address - 4));
-                                break;
+                        return entry("C.ADDI", REGISTER_IMMEDIATE, rd, 0, signExtend(sixBitImm, 6));
+                    case 0b001:
+                        if (wide) {
+                            if (rd == 0) {
+                                return entry("unknown_command", NONE, 0, 0, 0);
+                            }
+                            return entry("C.ADDIW", REGISTER_IMMEDIATE, rd, 0, signExtend(sixBitImm, 6));
                         }
-                        break;
-                    case "10":
-                        part0 = code.substring(0, 3);
-                        arg3 = getRegister(code.substring(4, 9));
-                        String number2 = "" + code.substring(12, 14) +
-                                code.charAt(3) + code.substring(9, 12) + "00";
-                        String number3 = "" + code.substring(7, 9) +
-                                code.substring(3, 7) + "00";
-                        switch (part0) {
-                            case "000":
-                                if (code.charAt(3) == '0' && code.startsWith("00000", 9)) {
-                                    arg2 = "C.SLLI64";
-                                    result.append(toFormat(arg0, arg1, arg2, arg3));
-                                } else {
-                                    arg2 = "C.SLLI";
-                                    arg4 = String.valueOf(source.fromBin(
-                                            "" + code.charAt(0) + code.substring(9, 14)
-                                    ));
-                                    result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                }
-                                break;
-                            case "001":
-                                arg2 = "C.FLDSP";
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        "" + code.substring(11, 14) +
-                                                code.charAt(3) + code.substring(9, 11) + "000"
-                                ));
-                                result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                break;
-                            case "010":
-                                arg2 = "C.LWSP";
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        number2
-                                ));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, "sp"));
-                                break;
-                            case "011":
-                                arg2 = "C.FLWSP";
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        number2
-                                ));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, "sp"));
-                                break;
-                            case "100":
-                                if (code.charAt(3) == '0') {
-                                    if (code.startsWith("00000", 9)) {
-                                        arg2 = "C.JR";
-                                        arg3 = getRegister(code.substring(4, 9));
-                                        result.append(toFormat(arg0, arg1, arg2, arg3));
-                                    } else {
-                                        arg2 = "C.MV";
-                                        arg3 = getRegister(code.substring(4, 9));
-                                        arg4 = getRegister(code.substring(9, 14));
-                                        result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                    }
-                                } else {
-                                    if (code.startsWith("00000", 9)) {
-                                        if (code.startsWith("00000", 4)) {
-                                            arg2 = "C.EBREAK";
-                                            result.append(toFormat(arg0, arg1, arg2));
-                                        } else {
-                                            arg2 = "C.JALR";
-                                            arg3 = getRegister(code.substring(4, 9));
-                                            result.append(toFormat(arg0, arg1, arg2, arg3));
-                                        }
-                                    } else {
-                                        arg2 = "C.ADD";
-                                        arg3 = getRegister(code.substring(4, 9));
-                                        arg4 = getRegister(code.substring(9, 14));
-                                        result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                                    }
+                        return entry("C.JAL", JUMP, 0, 0, cjImmediate(code));
+                    case 0b010:
+                        return entry("C.LI", REGISTER_IMMEDIATE, rd, 0, signExtend(sixBitImm, 6));
+                    case 0b011:
+                        if (rd == 2) {
+                            return entry("C.ADDI16SP", REGISTER_IMMEDIATE, 2, 0, signExtend(bit12 << 9
+                                    | ((code >>> 3) & 0x3) << 7 | ((code >>> 5) & 0x1) << 6
+                                    | ((code >>> 2) & 0x1) << 5 | ((code >>> 6) & 0x1) << 4, 10));
+                        }
+                        return entry("C.LUI", REGISTER_IMMEDIATE, rd, 0, signExtend(sixBitImm, 6) << 12);
+                    case 0b100:
+                        if (wide && sixBitImm != 0 && ((code >>> 10) & 0x3) < 0b10) {
+                            return entry(((code >>> 10) & 0x3) == 0 ? "C.SRLI" : "C.SRAI", REGISTER_IMMEDIATE, high, 0,
+                                    sixBitImm);
+                        }
+                        switch ((code >>> 10) & 0x3) {
+                            case 0b00:
+                                return entry("C.SRLI64", REGISTER, high, 0, 0);
+                            case 0b01:
+                                return entry("C.SRAI64", REGISTER, high, 0, 0);
+                            case 0b10:
+                                return entry("C.ANDI", REGISTER_BINARY, high, 0, sixBitImm);
+                            default:
+                                String command = q1ArithCommands[bit12 << 2 | ((code >>> 5) & 0x3)];
+                                if (command == null) {
+                                    return entry("unknown_command", NONE, 0, 0, 0);
                                 }
-                                break;
-                            case "101":
-                                arg2 = "C.FSDSP";
-                                arg3 = getRegister(code.substring(9, 14));
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        "" + code.substring(6, 9) +
-                                                code.substring(3, 6) + "000"
-                                ));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, "sp"));
-                                break;
-                            case "110":
-                                arg2 = "C.SWSP";
-                                arg3 = getRegister(code.substring(9, 14));
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        number3
-                                ));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4,"sp"));
-                                break;
-                            case "111":
-                                arg2 = "C.FSWSP";
-                                arg3 = getRegister(code.substring(9, 14));
-                                arg4 = String.valueOf(source.fromAbsBin(
-                                        number3
-                                ));
-                                result.append(lsToFormat(arg0, arg1, arg2, arg3, arg4, "sp"));
-                                break;
+                                return entry(command, TWO_REGISTERS, high, low, 0);
                         }
-                        break;
+                    case 0b101:
+                        return entry("C.J", JUMP, 0, 0, cjImmediate(code));
+                    default:
+                        return entry(funct3 == 0b110 ? "C.BEQZ" : "C.BNEZ", BRANCH, high, 0, cbImmediate(code));
                 }
-                address -= 2;
-            } else {
-                int arg0;
-                String arg1;
-                String arg2;
-                String arg3;
-                String arg4;
-                String arg5;
-                String temp = code.substring(25);
-                switch (temp) {
-                    case "0110011":
-                        result.append(decodeRFormat(code));
-                        break;
-                    case "0010011":
-                        result.append(decodeIFormat(code));
-                        break;
-                    case "0000011":
-                        result.append(decodeLoadFormat(code));
-                        break;
-                    case "0100011":
-                        result.append(decodeSFormat(code));
-                        break;
-                    case "1100011":
-                        result.append(decodeSBFormat(code));
-                        break;
-                    case "0110111":
-                        arg0 = address;
-                        arg1 = addSym();
-                        arg2 = "LUI";
-                        arg3 = getRegister(code.substring(20, 25));
-                        arg4 = String.valueOf(source.fromBin("" + code.substring(0, 20)));
-                        result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                        break;
-                    case "0010111":
-                        arg0 = address;
-                        arg1 = addSym();
-                        arg2 = "AUIPC";
-                        arg3 = getRegister(code.substring(20, 25));
-                        arg4 = String.valueOf(source.fromBin("" + code.substring(0, 20)));
-                        result.append(toFormat(arg0, arg1, arg2, arg3, arg4));
-                        break;
-                    case "1101111":
-                        arg0 = address;
-                        arg1 = addSym();
-                        arg2 = "JAL";
-                        arg3 = getRegister(code.substring(20, 25));
-                        int lb = source.fromBin("" + code.charAt(0) +
-                                code.substring(12, 20) + code.charAt(11) + code.substring(1, 11) + "0");
-                        arg4 = String.valueOf(lb);
-                        source.addSym(lb + address - 4);
-                        result.append(toJumpFormat(arg0, arg1, arg2, arg3, arg4, lb + address - 4));
-                        break;
-                    case "1100111":
-                        arg0 = address;
-                        arg1 = addSym();
-                        arg2 = "JALR";
-                        arg3 = getRegister(code.substring(20, 25));
-                        arg4 = getRegister(code.substring(12, 17));
-                        arg5 = String.valueOf(source.fromBin("" + code.substring(0, 12)));
-                        result.append(lsToFormat(arg0, arg1, arg2, arg3, arg5, arg4));
-                        break;
-                    case "1110011":
-                        String part0 = code.substring(0, 12);
-                        String part1 = code.substring(12, 17);
-                        String part2 = code.substring(17, 20);
-                        String part3 = code.substring(20, 25);
-                        arg0 = address;
-                        arg1 = addSym();
-                        if (part2.equals("000")) {
-                            if (part0.equals("000000000000")) {
-                                arg2 = "ECALL";
-                            } else {
-                                arg2 = "EBREAK";
-                            }
-                            result.append(toFormat(arg0, arg1, arg2));
-                        } else {
-                            arg3 = getRegister(part3);
-                            arg5 = systemRegisters.get(part0);
-                            if (part2.charAt(0) == '0') {
-                                arg4 = getRegister(part1);
-                                switch (part2) {
-                                    case "001":
-                                        arg2 = "CSRRW";
-                                        break;
-                                    case "010":
-                                        arg2 = "CSRRS";
-                                        break;
-                                    case "011":
-                                        arg2 = "CSRRC";
-                                        break;
-                                    default:
-                                        arg2 = "";
-                                        break;
-                                }
+            default:
+                switch (funct3) {
+                    case 0b000:
+                        if (wide && sixBitImm != 0) {
+                            return entry("C.SLLI", REGISTER_IMMEDIATE, rd, 0, sixBitImm);
+                        }
+                        if (bit12 == 0 && rs2 == 0) {
+                            return entry("C.SLLI64", REGISTER, rd, 0, 0);
+                        }
+                        return entry("C.SLLI", REGISTER_IMMEDIATE, rd, 0, rs2);
+                    case 0b001:
+                        return entry("C.FLDSP", REGISTER_IMMEDIATE, rd, 0,
+                                ((code >>> 2) & 0x7) << 6 | bit12 << 5 | ((code >>> 5) & 0x3) << 3);
+                    case 0b010:
+                    case 0b011:
+                        if (wide && funct3 == 0b011) {
+                            return entry("C.LDSP", LOAD_STORE, rd, 2,
+                                    ((code >>> 2) & 0x7) << 6 | bit12 << 5 | ((code >>> 5) & 0x3) << 3);
+                        }
+                        return entry(funct3 == 0b010 ? "C.LWSP" : "C.FLWSP", LOAD_STORE, rd, 2,
+                                ((code >>> 2) & 0x3) << 6 | bit12 << 5 | ((code >>> 4) & 0x7) << 2);
+                    case 0b100:
+                        if (bit12 == 0) {
+                            if (rs2 == 0) {
+                                return entry("C.JR", REGISTER, rd, 0, 0);
                             }
-                            else {
-                                arg4 = String.valueOf(source.fromBin(part1));
-                                switch (part2) {
-                                    case "101":
-                                        arg2 = "CSRRWI";
-                                        break;
-                                    case "110":
-                                        arg2 = "CSRRSI";
-                                        break;
-                                    case "111":
-                                        arg2 = "CSRRCI";
-                                        break;
-                                    default:
-                                        arg2 = "";
-                                        break;
-                                }
+                            return entry("C.MV", TWO_REGISTERS, rd, rs2, 0);
+                        }
+                        if (rs2 == 0) {
+                            if (rd == 0) {
+                                return entry("C.EBREAK", NONE, 0, 0, 0);
                             }
-                            result.append(toFormat(arg0, arg1, arg2, arg3, arg4, arg5));
+                            return entry("C.JALR", REGISTER, rd, 0, 0);
                         }
-                        break;
+                        return entry("C.ADD", TWO_REGISTERS, rd, rs2, 0);
+                    case 0b101:
+                        return entry("C.FSDSP", LOAD_STORE, rs2, 2,
+                                ((code >>> 7) & 0x7) << 6 | ((code >>> 10) & 0x7) << 3);
                     default:
-                        arg0 = address;
-                        arg1 = addSym();
-                        arg2 = "unknown_command";
-                        result.append(toFormat(arg0, arg1, arg2));
-                        break;
+                        if (wide && funct3 == 0b111) {
+                            return entry("C.SDSP", LOAD_STORE, rs2, 2,
+                                    ((code >>> 7) & 0x7) << 6 | ((code >>> 10) & 0x7) << 3);
+                        }
+                        return entry(funct3 == 0b110 ? "C.SWSP" : "C.FSWSP", LOAD_STORE, rs2, 2,
+                                ((code >>> 7) & 0x3) << 6 | ((code >>> 9) & 0xf) << 2);
                 }
-            }
         }
-        return result;
     }
 
-    private String decodeLoadFormat(String code) {
-        String rs1 = code.substring(12, 17);
-        int arg0 = address;
-        String arg1 = addSym();
-        String arg2 = loadCommands.get(code.substring(17, 20));
-        if (arg2 == null) {
-            arg0 = address;
-            arg1 = addSym();
-            arg2 = "unknown_command";
-            return(toFormat(arg0, arg1, arg2));
-        }
-        String arg3 = getRegister(code.substring(20, 25));
-        String arg4 = String.valueOf(source.fromBin(code.substring(0, 12)));
-        String arg5 = getRegister(rs1);
-        return lsToFormat(arg0, arg1, arg2, arg3, arg4, arg5);
-    }
-
-    private String decodeSBFormat(String code) {
-        int arg0 = address;
-        String arg1 = addSym();
-        String arg2 = sbCommands.get(code.substring(17, 20));
-        if (arg2 == null) {
-            arg0 = address;
-            arg1 = addSym();
-            arg2 = "unknown_command";
-            return(toFormat(arg0, arg1, arg2));
-        }
-        String arg3 = getRegister(code.substring(12, 17));
-        String arg4 = getRegister(code.substring(7, 12));
-        int la = source.fromBin("" + code.charAt(0) + code.charAt(24) +
-                code.substring(1, 7) + code.substring(20, 24) + "0");
-        String arg5 = String.valueOf(la);
-        source.addSym(address + la - 4);
-        return toJumpFormat(arg0, arg1, arg2, arg3, arg4, arg5, address + la - 4);
-    }
-
-    private String decodeSFormat(String code) {
-        int arg0 = address;
-        String arg1 = addSym();
-        String arg2 = sCommands.get(code.substring(17, 20));
-        if (arg2 == null) {
-            arg0 = address;
-            arg1 = addSym();
-            arg2 = "unknown_command";
-            return(toFormat(arg0, arg1, arg2));
-        }
-        String arg5 = getRegister(code.substring(12, 17));
-        String arg3 = getRegister(code.substring(7, 12));
-        String arg4 = String.valueOf(source.fromBin("" + code.substring(0, 7) + code.substring(20, 25)));
-        return lsToFormat(arg0, arg1, arg2, arg3, arg4, arg5);
-    }
-
-    private String decodeIFormat(String code) {
-        int arg0 = address;
-        String arg1 = addSym();
-        String arg2, arg3, arg4, arg5;
-        String func = code.substring(17, 20);
-        if (func.equals("101") || func.equals("001")) {
-            if (func.equals("001")) {
-                arg2 = "SLLI";
-            }
-            else if (code.charAt(1) == '1') {
-                arg2 = "SRAI";
-            } else {
-                arg2 = "SRLI";
-            }
-            arg3 = getRegister(code.substring(20, 25));
-            arg4 = getRegister(code.substring(12, 17));
-            arg5 = String.valueOf(source.fromBin(code.substring(7, 12)));
-        } else {
-            arg2 = iCommands.get(func);
-            if (arg2 == null) {
-                arg0 = address;
-                arg1 = addSym();
-                arg2 = "unknown_command";
-                return(toFormat(arg0, arg1, arg2));
-            }
-            arg3 = getRegister(code.substring(20, 25));
-            arg4 = getRegister(code.substring(12, 17));
-            arg5 = String.valueOf(source.fromBin(code.substring(0, 12)));
-        }
-        return toFormat(arg0, arg1, arg2, arg3, arg4, arg5);
+    private static long entry(String command, int layout, int first, int second, int immediate) {
+        int id = Arrays.asList(cCommands).indexOf(command);
+        return (long) immediate << 32 | second << 15 | first << 10 | layout << 6 | id;
     }
 
-    private String decodeRFormat(String code) {
-        int arg0 = address;
-        String arg1 = addSym();
-        String arg2 = rCommands.get(code.substring(0, 7) + code.substring(17, 20));
-        if (arg2 == null) {
-            arg2 = "unknown_command";
-            return(toFormat(arg0, arg1, arg2));
+    private void decodeLoadFormat(StringBuilder out, int code, int pc, boolean labelled) {
+        String command = loads[funct3(code)];
+        if (command == null) {
+            begin(out, pc, labelled, "unknown_command").append('\n');
+            return;
         }
-        String arg3 = getRegister(code.substring(20, 25));
-        String arg4 = getRegister(code.substring(12, 17));
-        String arg5 = getRegister(code.substring(7, 12));
-        return toFormat(arg0, arg1, arg2, arg3, arg4, arg5);
+        begin(out, pc, labelled, command).append(' ').append(registers[rd(code)]).append(", ")
+                .append(code >> 20).append('(').append(registers[rs1(code)]).append(")\n");
     }
 
-    private String getRegister(String substring) {
-        return registers[source.fromAbsBin(substring)];
+    private void decodeSBFormat(StringBuilder out, int code, int pc, boolean labelled) {
+        String command = sbCommands[funct3(code)];
+        if (command == null) {
+            begin(out, pc, labelled, "unknown_command").append('\n');
+            return;
+        }
+        int offset = bImmediate(code);
+        begin(out, pc, labelled, command).append(' ').append(registers[rs1(code)]).append(", ")
+                .append(registers[rs2(code)]).append(", ").append(offset);
+        target(out, pc + offset);
     }
 
-    private String addSym() {
-        StringBuilder result = new StringBuilder();
-        String sym = source.getSym(address);
-        address += 4;
-        if (sym != null) {
-            result.append(sym);
+    private void decodeSFormat(StringBuilder out, int code, int pc, boolean labelled) {
+        String command = stores[funct3(code)];
+        if (command == null) {
+            begin(out, pc, labelled, "unknown_command").append('\n');
+            return;
         }
-        return result.toString();
+        begin(out, pc, labelled, command).append(' ').append(registers[rs2(code)]).append(", ")
+                .append((code >> 25) << 5 | rd(code)).append('(').append(registers[rs1(code)]).append(")\n");
     }
 
-    private String toJumpFormat(int address, String loc, String command, String arg1, String arg2, int jLoc) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s, %s %s\n", address, loc, command, arg1, arg2, source.getSym(jLoc));
+    private void decodeIFormat(StringBuilder out, int code, int pc, boolean labelled) {
+        String command;
+        int immediate;
+        int func = funct3(code);
+        if (func == 0b101 || func == 0b001) {
+            if (func == 0b001) {
+                command = "SLLI";
+            } else if ((code & 0x40000000) != 0) {
+                command = "SRAI";
+            } else {
+                command = "SRLI";
+            }
+            immediate = shiftAmount(code);
+        } else {
+            command = iCommands[func];
+            immediate = code >> 20;
         }
-        return String.format("%08x %10s: %s %s, %s %s\n", address, loc, command, arg1, arg2, source.getSym(jLoc));
+        begin(out, pc, labelled, command).append(' ').append(registers[rd(code)]).append(", ")
+                .append(registers[rs1(code)]).append(", ").append(immediate).append('\n');
     }
 
-    private String toJumpFormat(int address, String loc, String command, String arg1, int jLoc) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s %s\n", address, loc, command, arg1, source.getSym(jLoc));
+    private void decodeIWFormat(StringBuilder out, int code, int pc, boolean labelled) {
+        String command = wide ? wImmediateCommand(code) : null;
+        if (command == null) {
+            begin(out, pc, labelled, "unknown_command").append('\n');
+            return;
         }
-        return String.format("%08x %10s: %s %s %s\n", address, loc, command, arg1, source.getSym(jLoc));
+        begin(out, pc, labelled, command).append(' ').append(registers[rd(code)]).append(", ")
+                .append(registers[rs1(code)]).append(", ")
+                .append(funct3(code) == 0 ? code >> 20 : (code >>> 20) & 0x1f).append('\n');
     }
 
-    private String toJumpFormat(int address, String loc, String command,
-                                String arg1, String arg2, String arg3, int jLoc) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s, %s, %s %s\n", address,
-                    loc, command, arg1, arg2, arg3, source.getSym(jLoc));
+    private static String wImmediateCommand(int code) {
+        switch (funct3(code)) {
+            case 0b000:
+                return "ADDIW";
+            case 0b001:
+                return "SLLIW";
+            case 0b101:
+                return (code & 0x40000000) != 0 ? "SRAIW" : "SRLIW";
+            default:
+                return null;
         }
-        return String.format("%08x %10s: %s %s, %s, %s %s\n", address, loc,
-                command, arg1, arg2, arg3, source.getSym(jLoc));
     }
 
-    private String toFormat(int address, String loc, String command, String arg1) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s\n", address, loc, command, arg1);
-        }
-        return String.format("%08x %10s: %s %s\n", address, loc, command, arg1);
+    private int shiftAmount(int code) {
+        return wide ? (code >>> 20) & 0x3f : (code << 7) >> 27;
     }
 
-    private String toFormat(int address, String loc, String command, String arg1, String arg2) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s, %s\n", address, loc, command, arg1, arg2);
+    private void decodeRFormat(StringBuilder out, int code, int pc, boolean labelled, String[] commands) {
+        String command = commands == null ? null : commands[(code >>> 22) & 0x3f8 | funct3(code)];
+        if (command == null) {
+            begin(out, pc, labelled, "unknown_command").append('\n');
+            return;
         }
-        return String.format("%08x %10s: %s %s, %s\n", address, loc, command, arg1, arg2);
+        begin(out, pc, labelled, command).append(' ').append(registers[rd(code)]).append(", ")
+                .append(registers[rs1(code)]).append(", ").append(registers[rs2(code)]).append('\n');
+    }
+
+    private static int rd(int code) {
+        return (code >>> 7) & 0x1f;
+    }
+
+    private static int rs1(int code) {
+        return (code >>> 15) & 0x1f;
+    }
+
+    private static int rs2(int code) {
+        return (code >>> 20) & 0x1f;
+    }
+
+    private static int funct3(int code) {
+        return (code >>> 12) & 0x7;
+    }
+
+    private static int cRegister(int field) {
+        return 8 + (field & 0x7);
+    }
+
+    private static int jImmediate(int code) {
+        return (code >> 31) << 20 | ((code >>> 12) & 0xff) << 12
+                | ((code >>> 20) & 0x1) << 11 | ((code >>> 21) & 0x3ff) << 1;
     }
 
-    private String toFormat(int address, String loc, String command, String arg1, String arg2, String arg3) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s, %s, %s\n", address, loc, command, arg1, arg2, arg3);
+    private static int bImmediate(int code) {
+        return (code >> 31) << 12 | ((code >>> 7) & 0x1) << 11
+                | ((code >>> 25) & 0x3f) << 5 | ((code >>> 8) & 0xf) << 1;
+    }
+
+    private static int cjImmediate(int code) {
+        return signExtend(((code >>> 12) & 0x1) << 11 | ((code >>> 8) & 0x1) << 10
+                | ((code >>> 9) & 0x3) << 8 | ((code >>> 6) & 0x1) << 7
+                | ((code >>> 7) & 0x1) << 6 | ((code >>> 2) & 0x1) << 5
+                | ((code >>> 11) & 0x1) << 4 | ((code >>> 3) & 0x7) << 1, 12);
+    }
+
+    private static int cbImmediate(int code) {
+        return signExtend(((code >>> 12) & 0x1) << 8 | ((code >>> 5) & 0x3) << 6
+                | ((code >>> 2) & 0x1) << 5 | ((code >>> 10) & 0x3) << 3
+                | ((code >>> 3) & 0x3) << 1, 9);
+    }
+
+    private static int signExtend(int value, int width) {
+        return (value << (32 - width)) >> (32 - width);
+    }
+
+    private StringBuilder begin(StringBuilder out, int address, boolean labelled, String command) {
+        hex(out, address, 8).append(' ');
+        String label = labelled ? source.getSymbolLabel(address) : null;
+        if (label != null && !label.isEmpty()) {
+            pad(out, LABEL_WIDTH - label.length()).append(label).append(": ");
+        } else if (label == null && labelled && source.isTarget(address)) {
+            local(out, address, LABEL_WIDTH).append(": ");
+        } else {
+            pad(out, LABEL_WIDTH).append(' ');
         }
-        return String.format("%08x %10s: %s %s, %s, %s\n", address, loc, command, arg1, arg2, arg3);
+        return out.append(command);
     }
 
-    private String toFormat(int address, String loc, String command) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s\n", address, loc, command);
+    private void target(StringBuilder out, int address) {
+        String label = source.getSymbolLabel(address);
+        out.append(' ');
+        if (label == null && source.isTarget(address)) {
+            local(out, address, 0);
+        } else {
+            out.append(label);
+        }
+        if (label == null && symbols != null) {
+            String inside = symbols.symbolize(address);
+            if (inside != null) {
+                out.append(" <").append(inside).append('>');
+            }
         }
-        return String.format("%08x %10s: %s\n", address, loc, command);
+        out.append('\n');
+    }
+
+    private static StringBuilder local(StringBuilder out, int address, int width) {
+        return hex(pad(out, width - 4 - Math.max(5, hexLength(address))).append("LOC_"), address, 5);
     }
 
-    private String lsToFormat(int address, String loc, String command, String arg1, String arg2, String arg3) {
-        if (loc.isEmpty()) {
-            return String.format("%08x %10s %s %s, %s(%s)\n", address, loc, command, arg1, arg2, arg3);
+    private static StringBuilder pad(StringBuilder out, int count) {
+        return out.append(PADDING, 0, Math.max(0, Math.min(count, PADDING.length)));
+    }
+
+    private static StringBuilder hex(StringBuilder out, int value, int digits) {
+        for (int shift = (Math.max(digits, hexLength(value)) - 1) * 4; shift >= 0; shift -= 4) {
+            out.append(HEX_DIGITS[(value >>> shift) & 0xf]);
         }
-        return String.format("%08x %10s: %s %s, %s(%s)\n", address, loc, command, arg1, arg2, arg3);
+        return out;
+    }
+
+    private static int hexLength(int value) {
+        return (35 - Integer.numberOfLeadingZeros(value)) / 4;
     }
 }
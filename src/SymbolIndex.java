@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+public class SymbolIndex {
+    private static final int PARALLEL_BATCH = 1 << 16;
+
+    private final ELFParser source;
+    private final int[] starts;
+    private final int[] extents;
+    private final int[] enclosing;
+    private final int[] nameOffsets;
+    private final String[] names;
+
+    private SymbolIndex(ELFParser source, int[] starts, int[] extents, int[] enclosing, int[] nameOffsets) {
+        this.source = source;
+        this.starts = starts;
+        this.extents = extents;
+        this.enclosing = enclosing;
+        this.nameOffsets = nameOffsets;
+        this.names = new String[starts.length];
+    }
+
+    public static SymbolIndex build(ELFParser source) {
+        long[] keys = new long[source.getSymbolCount()];
+        int count = 0;
+        for (int k = 0; k < source.getSymbolCount(); k++) {
+            int type = source.getSymbolType(k);
+            int section = source.getSymbolSection(k);
+            if (type > 2 || source.getSymbolNameOffset(k) == 0 || section == 0 || section == 0xfff1
+                    || source.getSymbolValue(k) > 0xFFFFFFFFL) {
+                continue;
+            }
+            int rank = (type == 2 ? 0 : type == 1 ? 2 : 4) + (source.getSymbolSize(k) == 0 ? 1 : 0);
+            keys[count++] = (source.getSymbolValue(k) << 32 | (long) rank << 28 | k) ^ Long.MIN_VALUE;
+        }
+        Arrays.sort(keys, 0, count);
+
+        int[] starts = new int[count];
+        int[] symbols = new int[count];
+        int size = 0;
+        for (int e = 0; e < count; e++) {
+            long key = keys[e] ^ Long.MIN_VALUE;
+            int start = (int) (key >>> 32);
+            if (size == 0 || starts[size - 1] != start) {
+                starts[size] = start;
+                symbols[size++] = (int) key & 0xFFFFFFF;
+            }
+        }
+        starts = Arrays.copyOf(starts, size);
+
+        int[] extents = new int[size];
+        int[] enclosing = new int[size];
+        int[] nameOffsets = new int[size];
+        int[] open = new int[size];
+        int depth = 0;
+        for (int e = 0; e < size; e++) {
+            long length = source.getSymbolSize(symbols[e]);
+            if (length == 0) {
+                length = e + 1 < size ? Integer.toUnsignedLong(starts[e + 1]) - Integer.toUnsignedLong(starts[e]) : 1;
+            }
+            extents[e] = (int) Math.min(length, 0xFFFFFFFFL - Integer.toUnsignedLong(starts[e]));
+            nameOffsets[e] = source.getSymbolNameOffset(symbols[e]);
+            while (depth > 0 && !contains(starts, extents, open[depth - 1], starts[e])) {
+                depth--;
+            }
+            enclosing[e] = depth > 0 ? open[depth - 1] : -1;
+            open[depth++] = e;
+        }
+        return new SymbolIndex(source, starts, extents, enclosing, nameOffsets);
+    }
+
+    private static boolean contains(int[] starts, int[] extents, int entry, int address) {
+        return Integer.compareUnsigned(address - starts[entry], extents[entry]) < 0;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public int getStart(int entry) {
+        return starts[entry];
+    }
+
+    public long getEnd(int entry) {
+        return Integer.toUnsignedLong(starts[entry]) + Integer.toUnsignedLong(extents[entry]);
+    }
+
+    public String getName(int entry) {
+        String name = names[entry];
+        if (name == null) {
+            name = source.readName(nameOffsets[entry]);
+            names[entry] = name;
+        }
+        return name;
+    }
+
+    public int lookup(int address) {
+        int low = 0;
+        int high = starts.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(starts[middle], address) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        int entry = high;
+        while (entry >= 0 && !contains(starts, extents, entry, address)) {
+            entry = enclosing[entry];
+        }
+        return entry;
+    }
+
+    public int[] lookup(int[] addresses) {
+        int[] entries = new int[addresses.length];
+        if (addresses.length >= PARALLEL_BATCH) {
+            Arrays.parallelSetAll(entries, k -> lookup(addresses[k]));
+            return entries;
+        }
+        int last = -1;
+        for (int k = 0; k < addresses.length; k++) {
+            if (last < 0 || !contains(starts, extents, last, addresses[k])
+                    || last + 1 < starts.length && Integer.compareUnsigned(addresses[k], starts[last + 1]) >= 0) {
+                last = lookup(addresses[k]);
+            }
+            entries[k] = last;
+        }
+        return entries;
+    }
+
+    public String symbolize(int address) {
+        return format(lookup(address), address);
+    }
+
+    public String[] symbolize(int[] addresses) {
+        int[] entries = lookup(addresses);
+        String[] result = new String[addresses.length];
+        if (addresses.length >= PARALLEL_BATCH) {
+            Arrays.parallelSetAll(result, k -> format(entries[k], addresses[k]));
+        } else {
+            Arrays.setAll(result, k -> format(entries[k], addresses[k]));
+        }
+        return result;
+    }
+
+    private String format(int entry, int address) {
+        if (entry < 0) {
+            return null;
+        }
+        int offset = address - starts[entry];
+        return offset == 0 ? getName(entry) : getName(entry) + "+0x" + Integer.toHexString(offset);
+    }
+}
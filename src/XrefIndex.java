@@ -0,0 +1,240 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+public class XrefIndex {
+    public static final int BRANCH = 0;
+    public static final int JUMP = 1;
+    public static final int CALL = 2;
+    public static final int ADDRESS = 3;
+
+    private static final String[] kindNames = {"branch", "jump", "call", "address"};
+
+    private static final int MAGIC = 0x46455258;
+    private static final int VERSION = 2;
+
+    private static final int OTHER = 0;
+    private static final int CONDITIONAL = 1;
+    private static final int DIRECT = 2;
+    private static final int UPPER = 3;
+    private static final int PC_UPPER = 4;
+    private static final int COMPRESSED_UPPER = 5;
+    private static final int OFFSET = 6;
+    private static final int INDIRECT = 7;
+
+    private final int[] targets;
+    private final int[] sources;
+    private final byte[] kinds;
+
+    private XrefIndex(int[] targets, int[] sources, byte[] kinds) {
+        this.targets = targets;
+        this.sources = sources;
+        this.kinds = kinds;
+    }
+
+    public static XrefIndex build(InstructionTable table) {
+        String[] mnemonics = table.getMnemonics();
+        byte[] classes = new byte[mnemonics.length];
+        for (int m = 0; m < mnemonics.length; m++) {
+            classes[m] = (byte) classify(mnemonics[m]);
+        }
+        long[] entries = new long[Math.max(16, table.size() / 4)];
+        int count = 0;
+        for (int r = 0; r < table.size(); r++) {
+            int address = table.getAddress(r);
+            int target;
+            switch (classes[table.getOpcode(r)]) {
+                case CONDITIONAL:
+                case DIRECT:
+                    target = address + table.getImmediate(r);
+                    break;
+                case UPPER:
+                case PC_UPPER:
+                case COMPRESSED_UPPER:
+                    if (r + 1 >= table.size() || table.getRd(r) <= 0 || table.getRs1(r + 1) != table.getRd(r)
+                            || table.getAddress(r + 1) != address + table.getLength(r)) {
+                        continue;
+                    }
+                    int next = classes[table.getOpcode(r + 1)];
+                    if (next != OFFSET && next != INDIRECT) {
+                        continue;
+                    }
+                    int upper = classes[table.getOpcode(r)] == COMPRESSED_UPPER
+                            ? table.getImmediate(r) : table.getImmediate(r) << 12;
+                    target = upper + table.getImmediate(r + 1);
+                    if (classes[table.getOpcode(r)] == PC_UPPER) {
+                        target += address;
+                    }
+                    address = table.getAddress(++r);
+                    break;
+                default:
+                    continue;
+            }
+            if (count == entries.length) {
+                entries = Arrays.copyOf(entries, count * 2);
+            }
+            entries[count++] = (long) (target ^ Integer.MIN_VALUE) << 32 | Integer.toUnsignedLong(address);
+        }
+        Arrays.sort(entries, 0, count);
+
+        int[] targets = new int[count];
+        int[] sources = new int[count];
+        byte[] kinds = new byte[count];
+        for (int e = 0; e < count; e++) {
+            targets[e] = (int) (entries[e] >> 32) ^ Integer.MIN_VALUE;
+            sources[e] = (int) entries[e];
+            int record = table.find(sources[e]);
+            int kind = classes[table.getOpcode(record)];
+            if (kind == CONDITIONAL) {
+                kinds[e] = BRANCH;
+            } else if (kind == DIRECT || kind == INDIRECT) {
+                kinds[e] = (byte) (table.getRd(record) > 0 ? CALL : JUMP);
+            } else {
+                kinds[e] = ADDRESS;
+            }
+        }
+        return new XrefIndex(targets, sources, kinds);
+    }
+
+    private static int classify(String mnemonic) {
+        switch (mnemonic) {
+            case "BEQ":
+            case "BNE":
+            case "BLT":
+            case "BGE":
+            case "BLTU":
+            case "BGEU":
+            case "C.BEQZ":
+            case "C.BNEZ":
+                return CONDITIONAL;
+            case "JAL":
+            case "C.J":
+            case "C.JAL":
+                return DIRECT;
+            case "LUI":
+                return UPPER;
+            case "AUIPC":
+                return PC_UPPER;
+            case "C.LUI":
+                return COMPRESSED_UPPER;
+            case "JALR":
+                return INDIRECT;
+            case "ADDI":
+            case "ADDIW":
+            case "C.ADDI":
+            case "C.ADDIW":
+            case "LB":
+            case "LH":
+            case "LW":
+            case "LD":
+            case "LBU":
+            case "LHU":
+            case "LWU":
+            case "SB":
+            case "SH":
+            case "SW":
+            case "SD":
+            case "C.LW":
+            case "C.SW":
+            case "C.LD":
+            case "C.SD":
+            case "C.FLW":
+            case "C.FSW":
+            case "C.FLD":
+            case "C.FSD":
+                return OFFSET;
+            default:
+                return OTHER;
+        }
+    }
+
+    public int size() {
+        return targets.length;
+    }
+
+    public int getTarget(int index) {
+        return targets[index];
+    }
+
+    public int getSource(int index) {
+        return sources[index];
+    }
+
+    public int getKind(int index) {
+        return kinds[index];
+    }
+
+    public static String getKindName(int kind) {
+        return kindNames[kind];
+    }
+
+    public int first(int target) {
+        int low = 0;
+        int high = targets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(targets[middle], target) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int last(int target) {
+        int low = 0;
+        int high = targets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (Integer.compareUnsigned(targets[middle], target) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public int[] sourcesOf(int target) {
+        return Arrays.copyOfRange(sources, first(target), last(target));
+    }
+
+    public void write(Path output) throws IOException {
+        try (FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(12 + targets.length * 9).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(targets.length);
+            buffer.asIntBuffer().put(targets).put(sources);
+            buffer.position(buffer.position() + targets.length * 8);
+            buffer.put(kinds).flip();
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+    }
+
+    public static XrefIndex read(Path input) throws IOException {
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            ByteBuffer buffer = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new AssertionError("Given file is not an xref index.");
+            }
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() < count * 9L) {
+                throw new AssertionError("Xref index is truncated.");
+            }
+            int[] targets = new int[count];
+            int[] sources = new int[count];
+            byte[] kinds = new byte[count];
+            buffer.asIntBuffer().get(targets).get(sources);
+            buffer.position(buffer.position() + count * 8);
+            buffer.get(kinds);
+            return new XrefIndex(targets, sources, kinds);
+        }
+    }
+}